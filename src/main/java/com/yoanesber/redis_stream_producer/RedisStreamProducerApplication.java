@@ -1,13 +1,23 @@
 package com.yoanesber.redis_stream_producer;
 
+import java.util.Map;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import com.yoanesber.redis_stream_producer.config.aot.ProducerRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(ProducerRuntimeHints.class)
 public class RedisStreamProducerApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(RedisStreamProducerApplication.class, args);
+		SpringApplication application = new SpringApplication(RedisStreamProducerApplication.class);
+
+		// Spring Boot samples 10% of the traces by default, so 90% of the traceparent headers written into stream
+		// entries would carry an unsampled flag; sample every trace unless application.properties says otherwise
+		application.setDefaultProperties(Map.of("management.tracing.sampling.probability", "1.0"));
+		application.run(args);
 	}
 
 }
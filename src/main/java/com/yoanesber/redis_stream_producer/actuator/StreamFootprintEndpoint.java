@@ -0,0 +1,39 @@
+package com.yoanesber.redis_stream_producer.actuator;
+
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import com.yoanesber.redis_stream_producer.dto.StreamFootprintDTO;
+import com.yoanesber.redis_stream_producer.redis.StreamFootprintCollector;
+
+/**
+ * StreamFootprintEndpoint exposes the memory footprint of the Redis streams at /actuator/streams
+ * (all streams) and /actuator/streams/{streamName} (a single stream).
+ * Every read queries Redis (XLEN and MEMORY USAGE), so the values are always current.
+ * Querying a stream that is neither configured nor published to does not register metrics for it.
+ *
+ * The endpoint must be exposed explicitly, e.g. management.endpoints.web.exposure.include=health,streams
+ */
+
+@Component
+@Endpoint(id = "streams")
+public class StreamFootprintEndpoint {
+    private final StreamFootprintCollector streamFootprintCollector;
+
+    public StreamFootprintEndpoint(StreamFootprintCollector streamFootprintCollector) {
+        this.streamFootprintCollector = streamFootprintCollector;
+    }
+
+    @ReadOperation
+    public List<StreamFootprintDTO> streams() {
+        return streamFootprintCollector.collect();
+    }
+
+    @ReadOperation
+    public StreamFootprintDTO stream(@Selector String streamName) {
+        return streamFootprintCollector.collect(streamName);
+    }
+}
@@ -0,0 +1,84 @@
+package com.yoanesber.redis_stream_producer.actuator;
+
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.yoanesber.redis_stream_producer.dto.ReplayJobDTO;
+import com.yoanesber.redis_stream_producer.redis.StreamReplayer;
+
+/**
+ * StreamReplayEndpoint starts and follows replay/backfill jobs (see StreamReplayer):
+ * - GET /actuator/replay: the checkpoints of all jobs
+ * - GET /actuator/replay/{jobId}: the checkpoint (progress) of a job
+ * - POST /actuator/replay/{jobId}: starts a job (JSON body with source, sourceStream, fromId, toId, file,
+ *   payloadType, targetStream, ratePerSecond and batchSize), or resumes an interrupted job with the same ID
+ * - DELETE /actuator/replay/{jobId}: cancels a job running on this instance; it can be resumed later
+ *
+ * Example: copy a window of PAYMENT_SUCCESS into PAYMENT_SUCCESS_REPLAY at 500 events per second
+ * POST /actuator/replay/incident-42 {"source":"STREAM","sourceStream":"PAYMENT_SUCCESS","fromId":"1700000000000-0",
+ *   "targetStream":"PAYMENT_SUCCESS_REPLAY","ratePerSecond":500}
+ *
+ * The endpoint publishes events, so it should only be exposed on a management port
+ * that is not reachable by clients, e.g. management.server.port=8081
+ */
+
+@Component
+@Endpoint(id = "replay")
+public class StreamReplayEndpoint {
+    private final StreamReplayer streamReplayer;
+
+    public StreamReplayEndpoint(StreamReplayer streamReplayer) {
+        this.streamReplayer = streamReplayer;
+    }
+
+    @ReadOperation
+    public List<ReplayJobDTO> jobs() {
+        return streamReplayer.checkpoints();
+    }
+
+    @ReadOperation
+    public ReplayJobDTO job(@Selector String jobId) {
+        return streamReplayer.checkpoint(jobId);
+    }
+
+    @WriteOperation
+    public ReplayJobDTO start(@Selector String jobId,
+            @Nullable String source,
+            @Nullable String sourceStream,
+            @Nullable String fromId,
+            @Nullable String toId,
+            @Nullable String file,
+            @Nullable String payloadType,
+            @Nullable String targetStream,
+            @Nullable Double ratePerSecond,
+            @Nullable Integer batchSize) {
+        ReplayJobDTO request = new ReplayJobDTO();
+        request.setSource(source);
+        request.setSourceStream(sourceStream);
+        request.setFromId(fromId);
+        request.setToId(toId);
+        request.setFile(file);
+        request.setPayloadType(payloadType);
+        request.setTargetStream(targetStream);
+        request.setRatePerSecond(ratePerSecond);
+        request.setBatchSize(batchSize);
+
+        try {
+            return streamReplayer.startJob(jobId, request);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+
+    @DeleteOperation
+    public boolean cancel(@Selector String jobId) {
+        return streamReplayer.cancelJob(jobId);
+    }
+}
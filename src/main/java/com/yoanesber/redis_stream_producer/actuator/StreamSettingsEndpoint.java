@@ -0,0 +1,77 @@
+package com.yoanesber.redis_stream_producer.actuator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.yoanesber.redis_stream_producer.dto.StreamSettingsDTO;
+import com.yoanesber.redis_stream_producer.redis.StreamSettingsRegistry;
+
+/**
+ * StreamSettingsEndpoint shows and changes the producer settings of the streams at runtime:
+ * - GET /actuator/streamsettings: the defaults and the effective settings of every stream with overrides
+ * - GET /actuator/streamsettings/{streamName}: the effective settings and the overrides of a stream
+ * - POST /actuator/streamsettings/{streamName}: overrides settings of a stream (JSON body, any subset of
+ *   maxlen, approximateTrimming, pipelineBatchSize, logSampleRate, maxInFlight, chunkThresholdBytes and chunkSizeBytes)
+ * - DELETE /actuator/streamsettings/{streamName}: removes the overrides of a stream
+ *
+ * Changes are stored in Redis and picked up by every producer instance (see StreamSettingsRegistry).
+ * The endpoint changes the behaviour of the producer, so it should only be exposed on a management port
+ * that is not reachable by clients, e.g. management.server.port=8081
+ */
+
+@Component
+@Endpoint(id = "streamsettings")
+public class StreamSettingsEndpoint {
+    private final StreamSettingsRegistry streamSettingsRegistry;
+
+    public StreamSettingsEndpoint(StreamSettingsRegistry streamSettingsRegistry) {
+        this.streamSettingsRegistry = streamSettingsRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("defaults", streamSettingsRegistry.defaultSettings());
+        settings.put("streams", streamSettingsRegistry.effectiveSettings());
+        return settings;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stream(@Selector String streamName) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("effective", streamSettingsRegistry.settings(streamName));
+        settings.put("overrides", streamSettingsRegistry.overrides(streamName));
+        return settings;
+    }
+
+    @WriteOperation
+    public StreamSettingsDTO update(@Selector String streamName,
+            @Nullable Long maxlen,
+            @Nullable Boolean approximateTrimming,
+            @Nullable Integer pipelineBatchSize,
+            @Nullable Integer logSampleRate,
+            @Nullable Integer maxInFlight,
+            @Nullable Integer chunkThresholdBytes,
+            @Nullable Integer chunkSizeBytes) {
+        try {
+            return streamSettingsRegistry.update(streamName,
+                new StreamSettingsDTO(maxlen, approximateTrimming, pipelineBatchSize, logSampleRate, maxInFlight,
+                    chunkThresholdBytes, chunkSizeBytes));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+
+    @DeleteOperation
+    public void reset(@Selector String streamName) {
+        streamSettingsRegistry.reset(streamName);
+    }
+}
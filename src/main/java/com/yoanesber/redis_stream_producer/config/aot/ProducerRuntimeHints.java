@@ -0,0 +1,66 @@
+package com.yoanesber.redis_stream_producer.config.aot;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import com.yoanesber.redis_stream_producer.config.serializer.InstantSerializer;
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentResponseDTO;
+import com.yoanesber.redis_stream_producer.dto.OrderPaymentImportProgressDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentBankRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentCCRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentPaypalRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentResponseDTO;
+import com.yoanesber.redis_stream_producer.dto.ReplayJobDTO;
+import com.yoanesber.redis_stream_producer.dto.StreamCanaryDTO;
+import com.yoanesber.redis_stream_producer.dto.StreamSettingsDTO;
+import com.yoanesber.redis_stream_producer.entity.CustomHttpResponse;
+import com.yoanesber.redis_stream_producer.entity.Order;
+import com.yoanesber.redis_stream_producer.entity.OrderDetail;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+import com.yoanesber.redis_stream_producer.entity.PaymentRetryTask;
+import com.yoanesber.redis_stream_producer.mapper.Converter;
+
+/**
+ * Runtime hints for the GraalVM native image (see the "native" profile in pom.xml).
+ * Most payloads are converted by Jackson through reflection in Converter and RedisTemplate,
+ * which Spring AOT cannot discover from the bean definitions alone, so they are registered here.
+ * The Lua scripts loaded from the classpath are registered as resources.
+ */
+
+public class ProducerRuntimeHints implements RuntimeHintsRegistrar {
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // DTOs and entities serialized or deserialized by Jackson (including nested types)
+        bindingRegistrar.registerReflectionHints(hints.reflection(),
+            CreateOrderPaymentRequestDTO.class,
+            CreateOrderPaymentResponseDTO.class,
+            OrderPaymentImportProgressDTO.class,
+            PaymentBankRequestDTO.class,
+            PaymentCCRequestDTO.class,
+            PaymentPaypalRequestDTO.class,
+            PaymentResponseDTO.class,
+            ReplayJobDTO.class,
+            StreamCanaryDTO.class,
+            StreamSettingsDTO.class,
+            CustomHttpResponse.class,
+            Order.class,
+            OrderDetail.class,
+            OrderPayment.class,
+            PaymentRetryTask.class);
+
+        // InstantSerializer is instantiated reflectively through @JsonSerialize(using = ...)
+        hints.reflection().registerType(InstantSerializer.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+
+        // Converter resolves its target type from the generic superclass of an anonymous TypeReference
+        hints.reflection().registerType(Converter.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerTypeIfPresent(classLoader, Converter.class.getName() + "$1", MemberCategory.values());
+
+        // Lua scripts executed by MessageProducer and CustomerRateLimiter
+        hints.resources().registerPattern("scripts/*.lua");
+    }
+}
@@ -0,0 +1,42 @@
+package com.yoanesber.redis_stream_producer.config.gateway;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties for hedged gateway requests (prefix "payment.gateway.hedging").
+ * Hedging is configured per payment method and is disabled for methods without a profile.
+ *
+ * Example:
+ * payment.gateway.hedging.methods.CREDIT_CARD.enabled=true
+ * payment.gateway.hedging.methods.CREDIT_CARD.percentile=0.95
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "payment.gateway.hedging")
+public class GatewayHedgingProperties {
+    private Map<String, HedgeProfile> methods = new HashMap<>(); // Profiles keyed by payment method
+
+    @Data
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class HedgeProfile {
+        private boolean enabled = false;
+        private double percentile = 0.95; // Hedge once the call is slower than this percentile of recent latencies
+        private long initialDelayMs = 1000; // Hedge delay used until minSamples latencies have been observed
+        private long minDelayMs = 10; // Lower bound of the hedge delay, to avoid hedging on noise
+        private int minSamples = 100; // Number of observed latencies needed before the percentile is used
+        private int windowSize = 1024; // Number of recent latencies the percentile is computed from
+    }
+}
@@ -0,0 +1,63 @@
+package com.yoanesber.redis_stream_producer.config.gateway;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties for the payment gateway simulator (prefix "payment.gateway.simulator").
+ * Each payment method (CREDIT_CARD, PAYPAL, BANK_TRANSFER) has its own latency distribution,
+ * failure rate and timeout rate; methods without a profile use the defaults below,
+ * which reproduce the original fixed 2 second gateway delay.
+ *
+ * Example:
+ * payment.gateway.simulator.seed=42
+ * payment.gateway.simulator.methods.CREDIT_CARD.distribution=LOG_NORMAL
+ * payment.gateway.simulator.methods.CREDIT_CARD.median-ms=300
+ * payment.gateway.simulator.methods.CREDIT_CARD.sigma=0.8
+ * payment.gateway.simulator.methods.CREDIT_CARD.failure-rate=0.02
+ * payment.gateway.simulator.methods.PAYPAL.distribution=HISTOGRAM
+ * payment.gateway.simulator.methods.PAYPAL.samples-ms=120,150,180,240,900,3000
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "payment.gateway.simulator")
+public class GatewaySimulatorProperties {
+    private long seed = 42L; // Seed of the random generators, so benchmark runs are reproducible
+    private Map<String, MethodProfile> methods = new HashMap<>(); // Profiles keyed by payment method
+
+    public enum Distribution {
+        CONSTANT, // Always constantMs
+        UNIFORM, // Uniform between minMs and maxMs
+        LOG_NORMAL, // Log-normal with the given median and sigma, capped at maxMs (long-tailed, like real gateways)
+        HISTOGRAM // Replays latencies drawn at random from recorded samplesMs
+    }
+
+    @Data
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class MethodProfile {
+        private Distribution distribution = Distribution.CONSTANT;
+        private long constantMs = 2000; // CONSTANT latency
+        private long minMs = 0; // UNIFORM lower bound
+        private long maxMs = 0; // UNIFORM upper bound, LOG_NORMAL cap (0 = no cap)
+        private double medianMs = 2000; // LOG_NORMAL median
+        private double sigma = 0.5; // LOG_NORMAL shape; larger values give a longer tail
+        private List<Long> samplesMs = new ArrayList<>(); // HISTOGRAM recorded latencies
+        private double failureRate = 0.0; // Probability that the gateway declines the payment
+        private double timeoutRate = 0.0; // Probability that the gateway does not answer in time
+        private long timeoutMs = 30000; // Time spent waiting before a timeout is reported
+    }
+}
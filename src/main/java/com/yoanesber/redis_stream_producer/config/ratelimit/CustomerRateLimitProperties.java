@@ -0,0 +1,61 @@
+package com.yoanesber.redis_stream_producer.config.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties for the per-customer rate limit of order payments (prefix "order-payment.rate-limit").
+ * Every customer gets a token bucket sized by the limits of its tier; customers without an assigned tier
+ * use the default tier. The rate limit is disabled by default.
+ *
+ * Example:
+ * order-payment.rate-limit.enabled=true
+ * order-payment.rate-limit.tiers.premium.rate-per-second=100
+ * order-payment.rate-limit.tiers.premium.burst=200
+ * order-payment.rate-limit.customers.CUST1001=premium
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "order-payment.rate-limit")
+public class CustomerRateLimitProperties {
+    private boolean enabled = false; // Set to true to limit the order payments of each customer
+    private Mode mode = Mode.LOCAL; // LOCAL limits each instance on its own, REDIS shares the limits across instances
+    private String defaultTier = "standard"; // Tier of the customers without an assignment
+    private Map<String, TierLimit> tiers = new HashMap<>(Map.of(
+        "standard", new TierLimit(10, 20),
+        "premium", new TierLimit(100, 200))); // Limits keyed by tier name
+    private Map<String, String> customers = new HashMap<>(); // Tier names keyed by customer ID
+    private int stripes = 64; // Number of independently evicted segments of the bucket map
+    private int maxCustomers = 1_000_000; // Maximum number of buckets kept in memory, across all stripes
+    private long idleEvictionMs = 600_000; // Buckets idle (full) for longer than this are evicted
+    private long sweepIntervalMs = 60_000; // Delay between two background sweeps of idle buckets
+
+    public enum Mode {
+        LOCAL,
+        REDIS
+    }
+
+    @Data
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class TierLimit {
+        private double ratePerSecond = 10; // Sustained number of payments per second
+        private int burst = 20; // Number of payments allowed at once after an idle period
+
+        public TierLimit(double ratePerSecond, int burst) {
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.yoanesber.redis_stream_producer.config.redis;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties for the priority publish lanes (prefix "redis.stream.lanes").
+ * Every stream is assigned to a lane; lanes are drained in proportion to their weight,
+ * so a flood in a low-priority lane cannot starve a high-priority one, and a lane can reserve
+ * workers that serve it only, so long bulk batches holding the shared workers cannot delay it either.
+ * Streams without an assignment use the default lane.
+ *
+ * Example:
+ * redis.stream.lanes.lanes.high.weight=8
+ * redis.stream.lanes.lanes.high.capacity=1000
+ * redis.stream.lanes.lanes.high.reserved-workers=1
+ * redis.stream.lanes.streams.PAYMENT_SUCCESS=high
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "redis.stream.lanes")
+public class PublishLaneProperties {
+    private boolean enabled = true; // Set to false to publish on the calling thread, without lanes
+    private int workers = 4; // Number of shared threads draining all lanes; with the reserved workers, the maximum number of publishes in flight
+    private long offerTimeoutMs = 1000; // How long a publish waits for room in a full lane before it is rejected
+    private long publishTimeoutMs = 30000; // How long a caller waits for its publish to complete before giving up
+    private String defaultLane = "normal"; // Lane of the streams without an assignment
+    private Map<String, LaneProfile> lanes = new HashMap<>(Map.of(
+        "high", new LaneProfile(8, 1000, 1),
+        "normal", new LaneProfile(2, 1000, 0),
+        "bulk", new LaneProfile(1, 100, 0))); // Profiles keyed by lane name
+    private Map<String, String> streams = new HashMap<>(Map.of(
+        "PAYMENT_SUCCESS", "high",
+        "PAYMENT_FAILED", "normal",
+        "PAYMENT_IMPORT", "bulk")); // Lane names keyed by stream name
+
+    @Data
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class LaneProfile {
+        private int weight = 1; // Share of the publish slots the lane gets while other lanes are busy
+        private int capacity = 1000; // Maximum number of publishes waiting in the lane
+        private int reservedWorkers = 0; // Additional threads that serve this lane only
+
+        public LaneProfile(int weight, int capacity, int reservedWorkers) {
+            this.weight = weight;
+            this.capacity = capacity;
+            this.reservedWorkers = reservedWorkers;
+        }
+    }
+}
@@ -11,10 +11,12 @@ import java.time.Duration;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -154,4 +156,43 @@ public class RedisConfig {
 
         return redisTemplate;
     }
+
+    /*
+     * Create a RedisScript bean for the atomic publish-with-index Lua script.
+     * The script performs XADD, records the business key -> record ID mapping in an index hash
+     * and bumps the per-stream counters in a single round trip.
+     * 
+     * RedisTemplate executes scripts with EVALSHA using the SHA1 computed by RedisScript,
+     * and falls back to EVAL (which also loads the script) when Redis replies with NOSCRIPT,
+     * so the script body is sent over the wire only once per Redis server.
+     */
+    @Bean
+    public RedisScript<String> publishWithIndexScript() {
+        return RedisScript.of(new ClassPathResource("scripts/publish_with_index.lua"), String.class);
+    }
+
+    /*
+     * Create a RedisScript bean for the shared per-customer token bucket Lua script.
+     * The script reads the Redis clock, so every producer instance takes tokens from the same bucket
+     * regardless of clock skew between the instances.
+     */
+    @Bean
+    public RedisScript<Long> customerRateLimitScript() {
+        return RedisScript.of(new ClassPathResource("scripts/customer_rate_limit.lua"), Long.class);
+    }
+
+    /*
+     * Create RedisScript beans to renew and release the lease of a replay job.
+     * Both compare the owner token of the run with the value of the lease before changing it,
+     * so a run that lost its lease cannot extend or delete the lease of the run that took over.
+     */
+    @Bean
+    public RedisScript<Long> replayLeaseRenewScript() {
+        return RedisScript.of(new ClassPathResource("scripts/replay_lease_renew.lua"), Long.class);
+    }
+
+    @Bean
+    public RedisScript<Long> replayLeaseReleaseScript() {
+        return RedisScript.of(new ClassPathResource("scripts/replay_lease_release.lua"), Long.class);
+    }
 }
\ No newline at end of file
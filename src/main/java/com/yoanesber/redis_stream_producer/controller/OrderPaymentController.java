@@ -1,30 +1,54 @@
 package com.yoanesber.redis_stream_producer.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
 import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentResponseDTO;
 import com.yoanesber.redis_stream_producer.entity.CustomHttpResponse;
 import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+import com.yoanesber.redis_stream_producer.ratelimit.RateLimitExceededException;
 import com.yoanesber.redis_stream_producer.service.OrderPaymentService;
 
 /**
  * OrderPaymentController handles HTTP requests related to order payments.
- * It provides an endpoint to create a new order payment record.
+ * It provides an endpoint to create a new order payment record,
+ * a streaming endpoint to import order payments in bulk from NDJSON,
+ * and endpoints to look up order payments by order ID, transaction ID or creation time.
+ * Lookups are served from the in-memory OrderPaymentStore, without a Redis round trip;
+ * the PAYMENT_SUCCESS entry of an order is found through the stream index, without scanning the stream.
+ * Payments of a customer over its rate limit are rejected with 429 Too Many Requests and a Retry-After header.
  */
 
 @RestController
 @RequestMapping("/api/v1/order-payment")
 public class OrderPaymentController {
     private final OrderPaymentService orderPaymentService;
+    private final ObjectMapper objectMapper;
 
-    public OrderPaymentController(OrderPaymentService orderPaymentService) {
+    private static final String NDJSON = "application/x-ndjson";
+
+    public OrderPaymentController(OrderPaymentService orderPaymentService, ObjectMapper objectMapper) {
         this.orderPaymentService = orderPaymentService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -54,6 +78,14 @@ public class OrderPaymentController {
                     orderPayment.getCurrency(),
                     orderPayment.getPaymentMethod(),
                     orderPayment.getCreatedAt())));
+        } catch (RateLimitExceededException e) {
+            // Retry-After is in whole seconds, rounded up
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf((e.getRetryAfterMs() + 999) / 1000))
+                .body(new CustomHttpResponse(
+                    HttpStatus.TOO_MANY_REQUESTS.value(), 
+                    e.getMessage(), 
+                    null));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(new CustomHttpResponse(
@@ -62,4 +94,137 @@ public class OrderPaymentController {
                     null));
         }
     }
-}
+
+    /*
+     * Import order payments from an NDJSON request body (one CreateOrderPaymentRequestDTO per line).
+     * The body is parsed and published incrementally, so memory use does not depend on the input size.
+     * Progress is streamed back as NDJSON, one OrderPaymentImportProgressDTO line per published batch,
+     * and the last line reports the final status (COMPLETED or FAILED).
+     * 
+     * The response is written directly to the servlet output stream instead of being returned
+     * asynchronously, so long imports are not cut off by the async request timeout.
+     */
+    @PostMapping(path = "/import", consumes = NDJSON, produces = NDJSON)
+    public void importOrderPayments(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+
+        try {
+            orderPaymentService.importOrderPayments(request.getInputStream(), progress -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(progress));
+                    out.write('\n');
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // The client went away while progress was being streamed back
+            throw e.getCause();
+        } catch (Exception e) {
+            out.write(objectMapper.writeValueAsBytes(new CustomHttpResponse(
+                HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                e.getMessage(),
+                null)));
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    @GetMapping("/order/{orderId}")
+    public ResponseEntity<CustomHttpResponse> getOrderPaymentByOrderId(@PathVariable String orderId) {
+        try {
+            return this.toLookupResponse(orderPaymentService.getOrderPaymentByOrderId(orderId),
+                "Order payment not found for order ID: " + orderId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new CustomHttpResponse(HttpStatus.BAD_REQUEST.value(), e.getMessage(), null));
+        }
+    }
+
+    /*
+     * Get the ID of the PAYMENT_SUCCESS stream entry of an order.
+     * The ID is read from the stream index written by the publish script, so the stream is not scanned.
+     */
+    @GetMapping("/order/{orderId}/event")
+    public ResponseEntity<CustomHttpResponse> getPaymentSuccessEvent(@PathVariable String orderId) {
+        try {
+            String recordId = orderPaymentService.getPaymentSuccessRecordId(orderId);
+            if (recordId == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new CustomHttpResponse(HttpStatus.NOT_FOUND.value(),
+                    "PAYMENT_SUCCESS event not found for order ID: " + orderId,
+                    null));
+            }
+
+            return ResponseEntity.status(HttpStatus.OK)
+                .body(new CustomHttpResponse(HttpStatus.OK.value(),
+                "PAYMENT_SUCCESS event found",
+                Map.of("orderId", orderId, "recordId", recordId)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new CustomHttpResponse(HttpStatus.BAD_REQUEST.value(), e.getMessage(), null));
+        }
+    }
+
+    @GetMapping("/transaction/{transactionId}")
+    public ResponseEntity<CustomHttpResponse> getOrderPaymentByTransactionId(@PathVariable String transactionId) {
+        try {
+            return this.toLookupResponse(orderPaymentService.getOrderPaymentByTransactionId(transactionId),
+                "Order payment not found for transaction ID: " + transactionId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new CustomHttpResponse(HttpStatus.BAD_REQUEST.value(), e.getMessage(), null));
+        }
+    }
+
+    /*
+     * Get the order payments created in [from, to), oldest first.
+     * from and to are ISO-8601 instants, e.g. 2025-01-01T00:00:00Z.
+     */
+    @GetMapping
+    public ResponseEntity<CustomHttpResponse> getOrderPaymentsByCreatedAt(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            List<CreateOrderPaymentResponseDTO> orderPayments = orderPaymentService.getOrderPaymentsByCreatedAt(from, to, limit)
+                .stream()
+                .map(this::toResponseDTO)
+                .toList();
+
+            return ResponseEntity.status(HttpStatus.OK)
+                .body(new CustomHttpResponse(HttpStatus.OK.value(),
+                "Found " + orderPayments.size() + " order payments",
+                orderPayments));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new CustomHttpResponse(HttpStatus.BAD_REQUEST.value(), e.getMessage(), null));
+        }
+    }
+
+    private ResponseEntity<CustomHttpResponse> toLookupResponse(OrderPayment orderPayment, String notFoundMessage) {
+        if (orderPayment == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new CustomHttpResponse(HttpStatus.NOT_FOUND.value(), notFoundMessage, null));
+        }
+
+        return ResponseEntity.status(HttpStatus.OK)
+            .body(new CustomHttpResponse(HttpStatus.OK.value(),
+            "Order payment found",
+            this.toResponseDTO(orderPayment)));
+    }
+
+    // Card, PayPal and bank details are not exposed by the lookup endpoints
+    private CreateOrderPaymentResponseDTO toResponseDTO(OrderPayment orderPayment) {
+        return new CreateOrderPaymentResponseDTO(orderPayment.getOrderId(),
+            orderPayment.getTransactionId(),
+            orderPayment.getPaymentStatus(),
+            orderPayment.getAmount(),
+            orderPayment.getCurrency(),
+            orderPayment.getPaymentMethod(),
+            orderPayment.getCreatedAt());
+    }
+}
\ No newline at end of file
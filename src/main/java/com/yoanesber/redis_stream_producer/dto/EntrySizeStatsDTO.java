@@ -0,0 +1,26 @@
+package com.yoanesber.redis_stream_producer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object (DTO) for the size of the stream entries of one payload type.
+ * Sizes are the encoded field names and values, measured by MessageProducer when the entries are encoded;
+ * they do not include the per-entry overhead of the Redis stream itself.
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor // Required for Jackson deserialization when receiving JSON requests.
+@AllArgsConstructor // Helps create DTO objects easily (useful when converting from entities).
+public class EntrySizeStatsDTO {
+    private String eventType; // Envelope eventType, i.e. the simple class name of the payload
+    private long count; // Number of entries measured since startup
+    private double averageBytes; // Average encoded size of an entry
+    private double p99Bytes; // 99th percentile of the encoded size (over the recent entries)
+    private double maxBytes; // Largest encoded size (over the recent entries)
+}
@@ -0,0 +1,27 @@
+package com.yoanesber.redis_stream_producer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object (DTO) for Order Payment Import Progress.
+ * This class is used to report the progress of a streaming NDJSON order payment import.
+ * A progress line is streamed back to the client after every published batch,
+ * followed by a final line once the import has completed or failed.
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor // Required for Jackson deserialization when receiving JSON requests.
+@AllArgsConstructor // Helps create DTO objects easily (useful when converting from entities).
+public class OrderPaymentImportProgressDTO {
+    private String status = "IN_PROGRESS"; // IN_PROGRESS, COMPLETED, FAILED
+    private long processed; // Number of records parsed so far
+    private long published; // Number of records published to the stream
+    private long rejected; // Number of records that failed validation
+    private String lastError; // Last validation or parsing error, if any
+}
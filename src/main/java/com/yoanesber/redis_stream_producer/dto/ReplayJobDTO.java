@@ -0,0 +1,49 @@
+package com.yoanesber.redis_stream_producer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.yoanesber.redis_stream_producer.config.serializer.InstantSerializer;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object (DTO) for a replay job of StreamReplayer.
+ * It holds both the definition of the job (source, target, pacing) and its checkpoint (position and counters),
+ * and is stored in Redis after every published batch so an interrupted job can be resumed.
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor // Required for Jackson deserialization when reading the checkpoint.
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReplayJobDTO {
+    private String jobId; // Identifies the job; starting a job with the same ID resumes it
+    private String source; // STREAM or NDJSON
+    private String sourceStream; // STREAM: stream to read with XRANGE
+    private String fromId; // STREAM: first entry ID of the window (inclusive), or null for the start of the stream
+    private String toId; // STREAM: last entry ID of the window (inclusive); fixed to the last entry when the job starts
+    private String file; // NDJSON: file to read, relative to the replay directory
+    private String payloadType; // Payload type of the records (NDJSON), or of source entries without an eventType header
+    private String targetStream; // Stream the records are published to
+    private Double ratePerSecond; // Target publish rate; 0 for no limit
+    private Integer batchSize; // Maximum number of records per pipelined batch
+
+    private String status; // RUNNING, COMPLETED, FAILED, CANCELLED
+    private String position; // Checkpoint: last entry ID read (STREAM) or number of records read (NDJSON)
+    private long read; // Number of source records read
+    private long published; // Number of records published to the target stream
+    private long skipped; // Number of source records skipped (canaries, unknown payload types, invalid records)
+    private String lastError; // Last error, if any
+
+    @JsonSerialize(using = InstantSerializer.class)
+    private Instant startedAt; // Time the job was first started
+
+    @JsonSerialize(using = InstantSerializer.class)
+    private Instant updatedAt; // Time of the last checkpoint
+}
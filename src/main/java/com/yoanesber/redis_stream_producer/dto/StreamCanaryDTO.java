@@ -0,0 +1,26 @@
+package com.yoanesber.redis_stream_producer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object (DTO) for Stream Canary entries.
+ * Canary entries are published by StreamLatencyProbe to measure how long it takes
+ * until a published event is readable. Their envelope eventType is "StreamCanaryDTO"
+ * and they carry canary=true, so consumers can filter them out.
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor // Required for Jackson deserialization when receiving JSON requests.
+@AllArgsConstructor // Helps create DTO objects easily (useful when converting from entities).
+public class StreamCanaryDTO {
+    private boolean canary = true; // Always true, marks the entry as a canary
+    private String probeId; // Producer instance running the probe
+    private long sequence; // Sequence number of the canary for this probe
+    private long publishedAt; // Epoch milliseconds when the canary was published
+}
@@ -0,0 +1,28 @@
+package com.yoanesber.redis_stream_producer.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object (DTO) for the memory footprint of a Redis stream.
+ * It is returned by the "streams" actuator endpoint and backs the redis.stream.* gauges.
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor // Required for Jackson deserialization when receiving JSON requests.
+@AllArgsConstructor // Helps create DTO objects easily (useful when converting from entities).
+public class StreamFootprintDTO {
+    private String streamName; // Name of the stream
+    private long length; // XLEN
+    private long memoryUsageBytes; // MEMORY USAGE of the stream key (sampled), 0 if the stream does not exist
+    private long maxlen; // Configured retention (MAXLEN) of the stream
+    private double bytesPerEntry; // Memory per entry: MEMORY USAGE / XLEN, or the average encoded entry size if the stream is empty
+    private long projectedRetentionBytes; // Projected memory of the stream once it holds maxlen entries
+    private List<EntrySizeStatsDTO> entrySizes; // Encoded entry sizes per payload type
+}
@@ -0,0 +1,31 @@
+package com.yoanesber.redis_stream_producer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object (DTO) for the producer settings of a Redis stream.
+ * The same type holds the overrides stored in Redis (only the fields that are set) and the effective
+ * settings of a stream (every field set, overrides merged over the defaults), see StreamSettingsRegistry.
+ * The registry hands out copies of the settings it holds, so changing a returned instance has no effect.
+ */
+
+@Data
+@Getter
+@Setter
+@NoArgsConstructor // Required for Jackson deserialization when receiving JSON requests.
+@AllArgsConstructor // Helps create DTO objects easily (useful when converting from entities).
+@JsonInclude(JsonInclude.Include.NON_NULL) // Overrides are stored without the fields they leave unset
+public class StreamSettingsDTO {
+    private Long maxlen; // Retention: maximum number of entries kept in the stream (XADD MAXLEN)
+    private Boolean approximateTrimming; // Retention: trim with "~" (faster, the stream may briefly exceed maxlen)
+    private Integer pipelineBatchSize; // Batching: maximum number of XADDs flushed per pipeline by produceBatch
+    private Integer logSampleRate; // Log sampling: log one in every logSampleRate publishes (1 logs every publish)
+    private Integer maxInFlight; // Concurrency: maximum number of concurrent publishes to the stream (0 is unlimited)
+    private Integer chunkThresholdBytes; // Chunking: entries larger than this are split into chunks (0 disables chunking)
+    private Integer chunkSizeBytes; // Chunking: maximum size of the data of one chunk
+}
@@ -0,0 +1,31 @@
+package com.yoanesber.redis_stream_producer.entity;
+
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Entity class representing a pending retry of a failed order payment.
+ * This class is persisted in Redis while the retry is pending, so that
+ * scheduled retries survive a restart of the application.
+ *
+ * The card CVV of the original request is never stored: a retry is a merchant-initiated
+ * charge of the card on file, which the gateway accepts without it.
+ * Redis cannot expire a single hash field, so each task carries its own expiry,
+ * after which it is dropped instead of being run.
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class PaymentRetryTask {
+    private CreateOrderPaymentRequestDTO orderPayment; // Original order payment request, without the card CVV
+    private int retryCount; // Retry attempt this task will perform (1 for the first retry)
+    private long dueAt; // Epoch milliseconds at which the retry is due
+    private long expiresAt; // Epoch milliseconds after which the retry is dropped if it has not run
+}
@@ -0,0 +1,192 @@
+package com.yoanesber.redis_stream_producer.gateway;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.config.gateway.GatewayHedgingProperties;
+import com.yoanesber.redis_stream_producer.config.gateway.GatewayHedgingProperties.HedgeProfile;
+
+/**
+ * GatewayHedger calls the payment gateway with optional request hedging to cut tail latency.
+ * When hedging is enabled for a payment method and the gateway has not answered within the configured
+ * percentile of its recent latencies, a second attempt is fired and whichever answers first is used;
+ * the other attempt is cancelled. A primary attempt cancelled because the hedge won is recorded in the latency
+ * window with the time it had run so far, so the slow calls that trigger hedges keep counting towards the percentile.
+ * Only the gateway call is hedged, so the caller still publishes exactly
+ * one event per payment. Both attempts carry the same order, which a real gateway must treat as the
+ * idempotency key so that at most one charge is made.
+ *
+ * Metrics (tagged by method):
+ * - payment.gateway.hedge.requests: calls made with hedging enabled
+ * - payment.gateway.hedge.fired: calls for which a hedge was fired (hedge rate = fired / requests)
+ * - payment.gateway.hedge.wins: calls answered by the hedge rather than the primary attempt
+ * - payment.gateway.hedge.wasted: time spent by the losing attempts before they were cancelled
+ */
+
+@Component
+public class GatewayHedger implements DisposableBean {
+    private final GatewaySimulator gatewaySimulator;
+    private final GatewayHedgingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    // Gateway calls block on I/O, so each attempt runs on a virtual thread
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private record Attempt(GatewaySimulator.Outcome outcome, boolean hedge) {
+    }
+
+    public GatewayHedger(GatewaySimulator gatewaySimulator, GatewayHedgingProperties properties, MeterRegistry meterRegistry) {
+        this.gatewaySimulator = gatewaySimulator;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Calls the payment gateway for the given payment method, hedging the call if enabled for the method.
+     *
+     * @param paymentMethod The payment method, e.g. CREDIT_CARD, PAYPAL, BANK_TRANSFER.
+     * @return The outcome of the first attempt that answered.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the gateway.
+     */
+    public GatewaySimulator.Outcome call(String paymentMethod) throws InterruptedException {
+        Assert.hasText(paymentMethod, "Payment method must not be empty");
+
+        String method = paymentMethod.toUpperCase();
+        HedgeProfile profile = properties.getMethods().get(method);
+        if (profile == null || !profile.isEnabled()) {
+            return gatewaySimulator.simulate(method);
+        }
+
+        meterRegistry.counter("payment.gateway.hedge.requests", "method", method).increment();
+
+        LatencyWindow window = latencies.computeIfAbsent(method, key -> new LatencyWindow(profile.getWindowSize()));
+        long hedgeDelayMs = Math.max(profile.getMinDelayMs(),
+            window.percentile(profile.getPercentile(), profile.getMinSamples(), profile.getInitialDelayMs()));
+
+        ExecutorCompletionService<Attempt> attempts = new ExecutorCompletionService<>(executor);
+        long start = System.nanoTime();
+        long hedgeStart = 0;
+        Future<Attempt> primary = attempts.submit(() -> attempt(method, window, false));
+        Future<Attempt> hedge = null;
+
+        try {
+            Future<Attempt> first = attempts.poll(hedgeDelayMs, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                // The primary attempt is slower than the hedge delay: fire the hedge and take whichever answers first
+                meterRegistry.counter("payment.gateway.hedge.fired", "method", method).increment();
+                hedgeStart = System.nanoTime();
+                hedge = attempts.submit(() -> attempt(method, window, true));
+                first = attempts.take();
+            }
+
+            Attempt result;
+            try {
+                result = first.get();
+            } catch (ExecutionException e) {
+                if (hedge == null) {
+                    throw new RuntimeException("Gateway call failed for method: " + method, e.getCause());
+                }
+                // The first attempt to finish failed; fall back to the other one
+                result = getAttempt(attempts.take(), method);
+            }
+
+            if (result.hedge()) {
+                meterRegistry.counter("payment.gateway.hedge.wins", "method", method).increment();
+            }
+            return result.outcome();
+        } finally {
+            // Cancel whichever attempt is still running and account for the work it wasted
+            long now = System.nanoTime();
+            if (!primary.isDone() && primary.cancel(true) && hedge != null) {
+                // The hedge won: the primary took at least this long, and leaving it out of the window would
+                // keep only the fast answers, pulling the percentile and with it the hedge delay ever lower
+                window.record(TimeUnit.NANOSECONDS.toMillis(now - start));
+                recordWasted(method, now - start);
+            }
+            if (hedge != null && !hedge.isDone()) {
+                hedge.cancel(true);
+                recordWasted(method, now - hedgeStart);
+            }
+        }
+    }
+
+    private Attempt attempt(String method, LatencyWindow window, boolean hedge) throws InterruptedException {
+        long start = System.nanoTime();
+        GatewaySimulator.Outcome outcome = gatewaySimulator.simulate(method);
+        window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return new Attempt(outcome, hedge);
+    }
+
+    private Attempt getAttempt(Future<Attempt> future, String method) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Gateway call failed for method: " + method, e.getCause());
+        }
+    }
+
+    private void recordWasted(String method, long nanos) {
+        if (nanos > 0) {
+            meterRegistry.timer("payment.gateway.hedge.wasted", "method", method).record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Ring buffer of the most recent gateway latencies of a payment method.
+     * The percentile is recomputed only every RECOMPUTE_INTERVAL samples, so reading it is cheap.
+     */
+    static class LatencyWindow {
+        private static final int RECOMPUTE_INTERVAL = 32;
+
+        private final long[] samples;
+        private int count;
+        private int next;
+        private int sinceRecompute;
+        private double cachedFor = -1;
+        private long cachedPercentile;
+
+        LatencyWindow(int size) {
+            this.samples = new long[Math.max(1, size)];
+        }
+
+        synchronized void record(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceRecompute++;
+        }
+
+        synchronized long percentile(double percentile, int minSamples, long fallback) {
+            if (count < Math.max(1, minSamples)) {
+                return fallback;
+            }
+
+            if (cachedFor != percentile || sinceRecompute >= RECOMPUTE_INTERVAL) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+                cachedPercentile = sorted[Math.max(0, index)];
+                cachedFor = percentile;
+                sinceRecompute = 0;
+            }
+            return cachedPercentile;
+        }
+    }
+}
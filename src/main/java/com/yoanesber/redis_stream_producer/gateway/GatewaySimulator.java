@@ -0,0 +1,94 @@
+package com.yoanesber.redis_stream_producer.gateway;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.config.gateway.GatewaySimulatorProperties;
+import com.yoanesber.redis_stream_producer.config.gateway.GatewaySimulatorProperties.MethodProfile;
+
+/**
+ * GatewaySimulator simulates the latency and the outcome of a payment gateway call.
+ * It replaces a fixed delay with a configurable profile per payment method (see GatewaySimulatorProperties),
+ * so the tail latency, bulkheads and retries of the producer can be benchmarked realistically.
+ *
+ * Each payment method draws from its own Random seeded from the configured seed,
+ * so a single-threaded run with the same seed always produces the same sequence of latencies and outcomes.
+ */
+
+@Component
+public class GatewaySimulator {
+    public enum Outcome {
+        SUCCESS, // The gateway accepted the payment
+        FAILED, // The gateway declined the payment
+        TIMEOUT // The gateway did not answer within the timeout
+    }
+
+    private static final MethodProfile DEFAULT_PROFILE = new MethodProfile();
+
+    private final GatewaySimulatorProperties properties;
+    private final Map<String, Random> randoms = new ConcurrentHashMap<>();
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public GatewaySimulator(GatewaySimulatorProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Simulates a gateway call for the given payment method, blocking the calling thread for the simulated latency.
+     *
+     * @param paymentMethod The payment method, e.g. CREDIT_CARD, PAYPAL, BANK_TRANSFER.
+     * @return The outcome of the simulated call.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the gateway.
+     */
+    public Outcome simulate(String paymentMethod) throws InterruptedException {
+        Assert.hasText(paymentMethod, "Payment method must not be empty");
+
+        String method = paymentMethod.toUpperCase();
+        MethodProfile profile = properties.getMethods().getOrDefault(method, DEFAULT_PROFILE);
+        Random random = randoms.computeIfAbsent(method, key -> new Random(properties.getSeed() ^ key.hashCode()));
+
+        // Draw everything up front, so the sequence of draws does not depend on the outcome
+        double outcomeDraw;
+        long latencyMs;
+        synchronized (random) {
+            outcomeDraw = random.nextDouble();
+            latencyMs = latencyMs(profile, random);
+        }
+
+        if (outcomeDraw < profile.getTimeoutRate()) {
+            Thread.sleep(profile.getTimeoutMs());
+            logger.warn("Simulated {} gateway timeout after {} ms", method, profile.getTimeoutMs());
+            return Outcome.TIMEOUT;
+        }
+
+        Thread.sleep(latencyMs);
+
+        if (outcomeDraw < profile.getTimeoutRate() + profile.getFailureRate()) {
+            return Outcome.FAILED;
+        }
+        return Outcome.SUCCESS;
+    }
+
+    // Draw a latency from the distribution of the profile
+    private long latencyMs(MethodProfile profile, Random random) {
+        switch (profile.getDistribution()) {
+            case UNIFORM:
+                return profile.getMinMs() + (long) (random.nextDouble() * Math.max(0, profile.getMaxMs() - profile.getMinMs()));
+            case LOG_NORMAL:
+                double latency = Math.exp(Math.log(profile.getMedianMs()) + profile.getSigma() * random.nextGaussian());
+                return profile.getMaxMs() > 0 ? Math.min((long) latency, profile.getMaxMs()) : (long) latency;
+            case HISTOGRAM:
+                List<Long> samples = profile.getSamplesMs();
+                return samples.isEmpty() ? profile.getConstantMs() : samples.get(random.nextInt(samples.size()));
+            case CONSTANT:
+            default:
+                return profile.getConstantMs();
+        }
+    }
+}
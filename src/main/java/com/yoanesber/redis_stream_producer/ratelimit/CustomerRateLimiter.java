@@ -0,0 +1,227 @@
+package com.yoanesber.redis_stream_producer.ratelimit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.config.ratelimit.CustomerRateLimitProperties;
+import com.yoanesber.redis_stream_producer.config.ratelimit.CustomerRateLimitProperties.TierLimit;
+
+/**
+ * CustomerRateLimiter limits the rate of order payments per customer, so a single misbehaving integration
+ * cannot take the gateway and Redis capacity of every other customer.
+ * Each customer has a token bucket (see TokenBucket) sized by the limits of its tier.
+ *
+ * In LOCAL mode the buckets live in memory, in a map split into stripes: each stripe is a ConcurrentHashMap
+ * holding at most maxCustomers / stripes buckets, so lookups never lock and a stripe that fills up is evicted
+ * on its own. Buckets that have been full for idleEvictionMs are removed by a background sweep, and when a
+ * stripe is full, full buckets (which hold no state) are evicted first, then a slice of the active ones.
+ * Evicting a bucket that was not full hands its customer a fresh burst, so maxCustomers should cover the
+ * customers active within the idle eviction period.
+ *
+ * In REDIS mode every instance takes tokens from the same bucket, stored under "RATE_LIMIT:customer:{customerId}"
+ * and updated by a Lua script in a single round trip. If Redis cannot be reached, the local buckets are
+ * used instead so payments are still limited per instance; the failure is logged with its stack trace once
+ * per outage rather than on every payment.
+ *
+ * Metrics:
+ * - order-payment.rate-limit.rejected: payments rejected, tagged by tier
+ * - order-payment.rate-limit.buckets: buckets held in memory
+ * - order-payment.rate-limit.fallback: REDIS mode checks that fell back to the local buckets
+ */
+
+@Component
+public class CustomerRateLimiter implements SmartLifecycle {
+    private static final String KEY_PREFIX = "RATE_LIMIT:customer:";
+
+    private final CustomerRateLimitProperties properties;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisScript<Long> customerRateLimitScript;
+    private final MeterRegistry meterRegistry;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<String, TokenBucket>[] stripes;
+    private final int maxPerStripe;
+    private final long idleNanos;
+    private final AtomicBoolean sharedLimitFailing = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    @SuppressWarnings("unchecked")
+    public CustomerRateLimiter(CustomerRateLimitProperties properties, RedisTemplate<String, Object> redisTemplate,
+            RedisScript<Long> customerRateLimitScript, MeterRegistry meterRegistry) {
+        Assert.isTrue(properties.getTiers().containsKey(properties.getDefaultTier()),
+            "Default tier is not defined: " + properties.getDefaultTier());
+        properties.getCustomers().forEach((customerId, tier) -> Assert.isTrue(properties.getTiers().containsKey(tier),
+            "Tier of customer " + customerId + " is not defined: " + tier));
+        properties.getTiers().forEach((tier, limit) -> Assert.isTrue(limit.getRatePerSecond() > 0 && limit.getBurst() > 0,
+            "Rate and burst of tier " + tier + " must be greater than zero"));
+        Assert.isTrue(properties.getStripes() > 0, "Stripes must be greater than zero");
+
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.customerRateLimitScript = customerRateLimitScript;
+        this.meterRegistry = meterRegistry;
+
+        this.stripes = new Map[properties.getStripes()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+        this.maxPerStripe = Math.max(1, properties.getMaxCustomers() / stripes.length);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(properties.getIdleEvictionMs());
+
+        Gauge.builder("order-payment.rate-limit.buckets", this, limiter -> limiter.size())
+            .description("Customer token buckets held in memory")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Takes a token from the bucket of a customer.
+     *
+     * @param customerId The ID of the customer placing the payment.
+     * @throws RateLimitExceededException if the customer has used up its rate limit.
+     */
+    public void acquire(String customerId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        Assert.hasText(customerId, "Customer ID must not be empty");
+
+        String tier = properties.getCustomers().getOrDefault(customerId, properties.getDefaultTier());
+        TierLimit limit = properties.getTiers().get(tier);
+
+        long waitNanos = properties.getMode() == CustomerRateLimitProperties.Mode.REDIS
+            ? acquireShared(customerId, limit)
+            : acquireLocal(customerId, limit);
+
+        if (waitNanos > 0) {
+            meterRegistry.counter("order-payment.rate-limit.rejected", "tier", tier).increment();
+            throw new RateLimitExceededException(customerId, Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+    }
+
+    private long acquireLocal(String customerId, TierLimit limit) {
+        long now = System.nanoTime();
+        Map<String, TokenBucket> stripe = stripes[Math.floorMod(customerId.hashCode(), stripes.length)];
+
+        TokenBucket bucket = stripe.get(customerId);
+        if (bucket == null) {
+            if (stripe.size() >= maxPerStripe) {
+                evict(stripe, now);
+            }
+            bucket = stripe.computeIfAbsent(customerId, key -> new TokenBucket(limit.getRatePerSecond(), limit.getBurst(), now));
+        }
+        return bucket.tryAcquire(now);
+    }
+
+    private long acquireShared(String customerId, TierLimit limit) {
+        long intervalMicros = Math.max(1, Math.round(1_000_000d / limit.getRatePerSecond()));
+
+        try {
+            Long waitMicros = redisTemplate.execute(customerRateLimitScript,
+                RedisSerializer.string(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(KEY_PREFIX + customerId),
+                String.valueOf(intervalMicros),
+                String.valueOf(limit.getBurst()));
+            if (sharedLimitFailing.getAndSet(false)) {
+                logger.info("Shared rate limit is reachable again, no longer using the local limits");
+            }
+            return waitMicros == null ? 0 : TimeUnit.MICROSECONDS.toNanos(waitMicros);
+        } catch (Exception e) {
+            meterRegistry.counter("order-payment.rate-limit.fallback").increment();
+            if (!sharedLimitFailing.getAndSet(true)) {
+                logger.warn("Error checking the shared rate limit of customer: {}, using the local limits until it recovers", customerId, e);
+            } else {
+                logger.debug("Error checking the shared rate limit of customer: {}, using the local limit: {}", customerId, e.getMessage());
+            }
+            return acquireLocal(customerId, limit);
+        }
+    }
+
+    // Makes room in a full stripe: idle buckets first, then full buckets, then a slice of the active buckets
+    private void evict(Map<String, TokenBucket> stripe, long now) {
+        stripe.values().removeIf(bucket -> bucket.isIdle(now, idleNanos));
+        if (stripe.size() >= maxPerStripe) {
+            stripe.values().removeIf(bucket -> bucket.isIdle(now, 0));
+        }
+
+        // Evict a sixteenth of the stripe at once, so the following inserts do not scan the stripe again
+        if (stripe.size() >= maxPerStripe) {
+            int toEvict = Math.max(1, maxPerStripe / 16);
+            Iterator<TokenBucket> buckets = stripe.values().iterator();
+            while (toEvict-- > 0 && buckets.hasNext()) {
+                buckets.next();
+                buckets.remove();
+            }
+            logger.warn("Customer rate limit buckets exceed {} per stripe, evicted active buckets; consider raising max-customers",
+                maxPerStripe);
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            for (Map<String, TokenBucket> stripe : stripes) {
+                stripe.values().removeIf(bucket -> bucket.isIdle(now, idleNanos));
+            }
+        } catch (Exception e) {
+            logger.error("Error evicting idle customer rate limit buckets", e);
+        }
+    }
+
+    // Number of buckets held in memory, across all stripes
+    private long size() {
+        long size = 0;
+        for (Map<String, TokenBucket> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void start() {
+        if (!properties.isEnabled() || properties.getSweepIntervalMs() <= 0) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sweep, properties.getSweepIntervalMs(), properties.getSweepIntervalMs(),
+            TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,19 @@
+package com.yoanesber.redis_stream_producer.ratelimit;
+
+/**
+ * Thrown when a customer has used up its rate limit.
+ * retryAfterMs tells the caller how long to wait before the next request can be accepted.
+ */
+
+public class RateLimitExceededException extends RuntimeException {
+    private final long retryAfterMs;
+
+    public RateLimitExceededException(String customerId, long retryAfterMs) {
+        super("Rate limit exceeded for customer: " + customerId);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
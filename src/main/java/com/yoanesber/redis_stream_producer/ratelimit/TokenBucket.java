@@ -0,0 +1,51 @@
+package com.yoanesber.redis_stream_producer.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TokenBucket is a lock-free token bucket holding its whole state in a single AtomicLong.
+ *
+ * Instead of a token count and a refill timestamp, the bucket stores the time at which it will be full
+ * again (the "theoretical arrival time" of the generic cell rate algorithm, which admits exactly the same
+ * requests as a token bucket). Taking a token moves that time forward by one emission interval, and is
+ * allowed as long as it stays within burst intervals of now. A single CAS therefore updates the bucket,
+ * and a bucket whose full time has passed is indistinguishable from a new one, so it can be evicted
+ * without losing state.
+ */
+
+public final class TokenBucket {
+    private final long intervalNanos; // Time to refill one token
+    private final long toleranceNanos; // How far ahead of now the full time may move, i.e. burst intervals
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+        this.intervalNanos = Math.max(1, Math.round(1_000_000_000d / ratePerSecond));
+        this.toleranceNanos = intervalNanos * Math.max(1, burst);
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes a token from the bucket.
+     *
+     * @param nowNanos The current time, from System.nanoTime().
+     * @return 0 if a token was taken, otherwise the number of nanoseconds until one is available.
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long ahead = next - nowNanos;
+            if (ahead > toleranceNanos) {
+                return ahead - toleranceNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Returns true if the bucket has been full for at least idleNanos, i.e. it holds no state worth keeping
+    public boolean isIdle(long nowNanos, long idleNanos) {
+        return nowNanos - fullAt.get() >= idleNanos;
+    }
+}
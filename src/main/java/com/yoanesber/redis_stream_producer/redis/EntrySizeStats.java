@@ -0,0 +1,104 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+import com.yoanesber.redis_stream_producer.dto.EntrySizeStatsDTO;
+
+/**
+ * EntrySizeStats records the encoded size of every stream entry published by MessageProducer,
+ * per stream and payload type, in the redis.stream.entry.size distribution summary (with a published p99).
+ * The size is the sum of the encoded field names and values, i.e. what is sent to Redis in the XADD.
+ */
+
+@Component
+public class EntrySizeStats {
+    private static final double P99 = 0.99;
+
+    // Summaries keyed by stream name, then by eventType
+    private final Map<String, Map<String, DistributionSummary>> summaries = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    public EntrySizeStats(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Records the encoded size of a stream entry.
+     *
+     * @param streamName  The name of the Redis stream the entry is published to.
+     * @param payloadType The type of the payload of the entry.
+     * @param entry       The encoded fields of the entry.
+     * @return The encoded size of the entry, in bytes.
+     */
+    public long record(String streamName, Class<?> payloadType, Map<byte[], byte[]> entry) {
+        long size = 0;
+        for (Map.Entry<byte[], byte[]> field : entry.entrySet()) {
+            size += field.getKey().length + field.getValue().length;
+        }
+        summary(streamName, payloadType.getSimpleName()).record(size);
+        return size;
+    }
+
+    // Returns the streams entries have been published to since startup
+    public List<String> streams() {
+        return new ArrayList<>(summaries.keySet());
+    }
+
+    /**
+     * Returns the entry size statistics of a stream, per payload type.
+     *
+     * @param streamName The name of the Redis stream.
+     * @return The statistics, or an empty list if nothing has been published to the stream.
+     */
+    public List<EntrySizeStatsDTO> snapshot(String streamName) {
+        Map<String, DistributionSummary> byEventType = summaries.getOrDefault(streamName, Map.of());
+
+        List<EntrySizeStatsDTO> stats = new ArrayList<>(byEventType.size());
+        for (Map.Entry<String, DistributionSummary> summary : byEventType.entrySet()) {
+            HistogramSnapshot snapshot = summary.getValue().takeSnapshot();
+
+            double p99 = 0;
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                if (percentile.percentile() == P99) {
+                    p99 = percentile.value();
+                }
+            }
+
+            stats.add(new EntrySizeStatsDTO(summary.getKey(), snapshot.count(), snapshot.mean(), p99, snapshot.max()));
+        }
+        return stats;
+    }
+
+    /**
+     * Removes the statistics and meters of a stream, e.g. of a scratch stream that has been deleted.
+     *
+     * @param streamName The name of the Redis stream.
+     */
+    public void remove(String streamName) {
+        Map<String, DistributionSummary> byEventType = summaries.remove(streamName);
+        if (byEventType != null) {
+            byEventType.values().forEach(meterRegistry::remove);
+        }
+    }
+
+    private DistributionSummary summary(String streamName, String eventType) {
+        return summaries
+            .computeIfAbsent(streamName, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(eventType, key -> DistributionSummary.builder("redis.stream.entry.size")
+                .description("Encoded size of the stream entries published by MessageProducer")
+                .baseUnit("bytes")
+                .tag("stream", streamName)
+                .tag("eventType", eventType)
+                .publishPercentiles(P99)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,167 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * EventCoalescer merges duplicate events published for the same key and stream within a short window.
+ * The first event for a key opens the window; events for the same key and stream published before the
+ * window closes supersede it (the latest payload wins). When the window closes, a single entry is
+ * published with a "coalescedCount" field holding the number of events it replaces.
+ *
+ * This is used for PAYMENT_FAILED events, which can be published more than once for the same order
+ * (e.g. by the gateway call and again by createOrderPayment). Coalescing keeps the write load on Redis
+ * flat during gateway storms, at the cost of delaying these events by up to one window.
+ * Pending events are flushed when the application shuts down.
+ *
+ * When publishing a coalesced event fails, it is put back for another window (merged with any event for the
+ * same key published meanwhile) up to maxFlushAttempts times; an event that still cannot be published, or
+ * that fails during shutdown, is dropped and counted in redis.stream.coalesced.dropped (tagged by stream).
+ */
+
+@Component
+public class EventCoalescer implements DisposableBean {
+    // enabled: Set to false to publish every event immediately
+    // windowMs: How long the first event for a key waits for duplicates before being published
+    // maxFlushAttempts: Number of times a coalesced event is published before it is dropped
+    @Value("${redis.stream.coalescing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${redis.stream.coalescing.window-ms:200}")
+    private long windowMs;
+
+    @Value("${redis.stream.coalescing.max-flush-attempts:3}")
+    private int maxFlushAttempts;
+
+    public static final String COALESCED_COUNT_FIELD = "coalescedCount";
+
+    // Pending events keyed by "streamName|key"
+    private final Map<String, PendingEvent> pendingEvents = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MessageProducer messageProducer;
+    private final TraceContextHeaders traceContextHeaders;
+    private final MeterRegistry meterRegistry;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // Only accessed while holding the lock of the map entry, or after the entry has been removed
+    private static class PendingEvent {
+        private final String streamName;
+        private Object payload;
+        private Map<byte[], byte[]> traceHeaders;
+        private int count;
+        private int flushAttempts;
+
+        PendingEvent(String streamName, Object payload, Map<byte[], byte[]> traceHeaders) {
+            this.streamName = streamName;
+            this.payload = payload;
+            this.traceHeaders = traceHeaders;
+            this.count = 1;
+        }
+    }
+
+    public EventCoalescer(MessageProducer messageProducer, TraceContextHeaders traceContextHeaders, MeterRegistry meterRegistry) {
+        this.messageProducer = messageProducer;
+        this.traceContextHeaders = traceContextHeaders;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Publishes an event to the specified Redis stream, merging it with the other events
+     * published for the same key and stream within the coalescing window.
+     *
+     * @param streamName The name of the Redis stream to publish the event to.
+     * @param payload    The payload of the event.
+     * @param key        The key identifying duplicate events (e.g. the orderId).
+     */
+    public void produce(String streamName, Object payload, String key) {
+        Assert.hasText(streamName, "Stream name must not be empty");
+        Assert.notNull(payload, "Payload must not be null");
+
+        if (!enabled || key == null) {
+            messageProducer.produce(streamName, payload, Map.of(COALESCED_COUNT_FIELD, 1));
+            return;
+        }
+
+        // The event is published on the coalescer thread, after the current span has ended,
+        // so its trace context is captured now; the entry carries the trace of the latest event
+        Map<byte[], byte[]> traceHeaders = traceContextHeaders.current();
+
+        String pendingKey = streamName + "|" + key;
+        pendingEvents.compute(pendingKey, (k, pending) -> {
+            if (pending == null) {
+                // First event for the key: open the window
+                scheduler.schedule(() -> flush(pendingKey), windowMs, TimeUnit.MILLISECONDS);
+                return new PendingEvent(streamName, payload, traceHeaders);
+            }
+
+            // Duplicate or superseding event: keep the latest payload and count the merged occurrence
+            pending.payload = payload;
+            pending.traceHeaders = traceHeaders;
+            pending.count++;
+            meterRegistry.counter("redis.stream.coalesced", "stream", streamName).increment();
+            return pending;
+        });
+    }
+
+    private void flush(String pendingKey) {
+        PendingEvent pending = pendingEvents.remove(pendingKey);
+        if (pending == null) {
+            return;
+        }
+
+        try {
+            messageProducer.produce(pending.streamName, pending.payload, Map.of(COALESCED_COUNT_FIELD, pending.count), pending.traceHeaders);
+        } catch (Exception e) {
+            pending.flushAttempts++;
+            if (pending.flushAttempts < maxFlushAttempts && !scheduler.isShutdown()) {
+                logger.warn("Error publishing coalesced event to stream: {}, retrying in {} ms", pending.streamName, windowMs, e);
+                requeue(pendingKey, pending);
+                return;
+            }
+
+            meterRegistry.counter("redis.stream.coalesced.dropped", "stream", pending.streamName).increment();
+            logger.error("Dropped coalesced event for stream: {} after {} attempts", pending.streamName, pending.flushAttempts, e);
+        }
+    }
+
+    // Puts a failed event back for another window; an event for the same key published meanwhile
+    // has opened its own window and supersedes the failed one, keeping its count of merged occurrences
+    private void requeue(String pendingKey, PendingEvent failed) {
+        pendingEvents.compute(pendingKey, (k, pending) -> {
+            if (pending == null) {
+                scheduler.schedule(() -> flush(pendingKey), windowMs, TimeUnit.MILLISECONDS);
+                return failed;
+            }
+
+            pending.count += failed.count;
+            pending.flushAttempts = Math.max(pending.flushAttempts, failed.flushAttempts);
+            return pending;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+
+        // Publish whatever is still waiting for its window to close
+        for (String pendingKey : new ArrayList<>(pendingEvents.keySet())) {
+            flush(pendingKey);
+        }
+    }
+}
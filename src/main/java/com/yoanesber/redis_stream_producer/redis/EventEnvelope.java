@@ -0,0 +1,43 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+/**
+ * EventEnvelope defines the header fields that MessageProducer writes in front of the payload fields
+ * of every stream entry. Consumers can use them to route and version events without inspecting the payload.
+ *
+ * The header values are constant for a given stream and event type, so MessageProducer encodes them
+ * to bytes once and reuses the encoded fields for every event.
+ */
+
+public final class EventEnvelope {
+    public static final String EVENT_TYPE = "eventType"; // Simple class name of the payload, e.g. OrderPayment
+    public static final String SCHEMA_VERSION = "schemaVersion"; // Version of the envelope/payload schema
+    public static final String PRODUCER_INSTANCE = "producerInstance"; // Application name and host of the producer
+    public static final String STREAM_NAME = "streamName"; // Stream the event was published to
+
+    // W3C Trace Context of the request that published the event; written after the headers above, see TraceContextHeaders
+    public static final String TRACEPARENT = "traceparent";
+    public static final String TRACESTATE = "tracestate";
+
+    // Pointer entries: written in place of an oversized entry whose fields were split into chunks (see MessageProducer)
+    public static final String CHUNKED = "chunked"; // Always true on a pointer entry
+    public static final String CHUNK_STREAM = "chunkStream"; // Companion stream holding the chunks, "streamName:chunks"
+    public static final String CHUNK_GROUP_ID = "chunkGroupId"; // Identifies the chunks of the entry (an ID generated for it, not the pointer ID)
+    public static final String CHUNK_COUNT = "chunkCount"; // Number of chunks
+    public static final String CHUNK_CHECKSUM = "chunkChecksum"; // CRC32 (hex) of the reassembled data
+    public static final String CHUNK_TOTAL_BYTES = "chunkTotalBytes"; // Size of the reassembled data
+    public static final String CHUNK_FIRST_ID = "chunkFirstId"; // ID of the first chunk, for XRANGE
+    public static final String CHUNK_LAST_ID = "chunkLastId"; // ID of the last chunk, for XRANGE
+
+    // Chunk entries on the companion stream; data holds raw bytes, the other fields are encoded like any field
+    public static final String CHUNK_INDEX = "index"; // Position of the chunk, from 0
+    public static final String CHUNK_DATA = "data"; // Slice of the reassembled data
+
+    // Event type of the canary entries written by StreamLatencyProbe; consumers should skip entries of this type
+    public static final String CANARY_EVENT_TYPE = "StreamCanaryDTO";
+
+    // Bump this when the layout of the envelope or the payloads changes in a way consumers must know about
+    public static final int CURRENT_SCHEMA_VERSION = 1;
+
+    private EventEnvelope() {
+    }
+}
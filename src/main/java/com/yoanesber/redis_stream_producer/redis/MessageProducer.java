@@ -1,16 +1,32 @@
 package com.yoanesber.redis_stream_producer.redis;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
-import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.ByteRecord;
 import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import com.yoanesber.redis_stream_producer.dto.StreamSettingsDTO;
 import com.yoanesber.redis_stream_producer.mapper.Converter;
 
 /**
@@ -20,28 +36,73 @@ import com.yoanesber.redis_stream_producer.mapper.Converter;
  * 
  * The component uses a RedisTemplate to interact with the Redis stream and provides methods to publish messages.
  * The messages are stored in a Redis stream with a maximum length, and older messages are trimmed when the limit is reached.
+ * The retention, pipeline batch size, log sampling and concurrency limit of each stream come from StreamSettingsRegistry
+ * and can be changed at runtime; every publish reads the settings of its stream once.
+ *
+ * Entries larger than the chunk threshold of their stream are split: their payload fields are published as chunks
+ * on the companion stream "streamName:chunks" and a small pointer entry is published in their place (see chunkIfOversized).
+ *
+ * Every publish runs in the priority lane of its stream (see PublishLanes); the trace context is captured
+ * on the calling thread before the publish is handed over.
  */
 
 @Component
 public class MessageProducer {
-    // Default maxlen and approximate trimming for the stream
-    // maxlen: The maximum number of messages to keep in the stream. When the stream reaches this limit, older messages are removed.
-    // approximateTrimming: If true, Redis will use an approximate algorithm to trim the stream. This is faster but may not guarantee that the stream size is exactly maxlen.
-    // If false, Redis will use an exact algorithm, which is slower but guarantees that the stream size is exactly maxlen.
-    private Long maxlen = 3L;
-    private boolean approximateTrimming = true;
-
     // AtomicLong to keep track of the last timestamp and sequence number
     // lastTimestamp: The last timestamp used for generating IDs. This is used to ensure that IDs are unique even if multiple messages are generated in the same millisecond.
     // sequence: A counter that is incremented each time a message is generated in the same millisecond. This ensures that even if multiple messages are generated in the same millisecond, they will have unique IDs.
     private final AtomicLong lastTimestamp = new AtomicLong(0);
     private final AtomicLong sequence = new AtomicLong(0);
 
+    // TTL of the secondary index (index value -> record ID) written by produceWithIndex
+    // The TTL is refreshed on every indexed publish, so the index expires only after the stream goes quiet.
+    // While the stream is active, the index is trimmed together with the stream by the publish script.
+    @Value("${redis.stream.index.ttl-seconds:86400}")
+    private long indexTtlSeconds;
+
+    // Maximum number of trimmed index values removed by a single indexed publish
+    @Value("${redis.stream.index.trim-batch-size:100}")
+    private int indexTrimBatchSize;
+
+    // Envelope settings; see EventEnvelope for the header fields written in front of every payload
+    @Value("${redis.stream.envelope.schema-version:" + EventEnvelope.CURRENT_SCHEMA_VERSION + "}")
+    private int schemaVersion;
+
+    @Value("${spring.application.name:redis-stream-producer}")
+    private String applicationName;
+
+    // Encoded envelope headers, keyed by "streamName|eventType"
+    // The headers are constant for a given stream and event type, so they are serialized only once.
+    private final Map<String, Map<byte[], byte[]>> envelopeHeaders = new ConcurrentHashMap<>();
+
+    private static final String INDEX_KEY_SUFFIX = ":index:";
+    private static final String INDEX_ORDER_KEY_SUFFIX = ":by-id";
+    private static final String COUNTERS_KEY_SUFFIX = ":counters";
+    public static final String CHUNK_STREAM_SUFFIX = ":chunks";
+
+    // Fields of an entry and the record ID to publish it with (a new ID when the entry was replaced by a chunk pointer)
+    private record EncodedEntry(RecordId id, Map<byte[], byte[]> fields) {
+    }
+
     private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisScript<String> publishWithIndexScript;
+    private final TraceContextHeaders traceContextHeaders;
+    private final EntrySizeStats entrySizeStats;
+    private final StreamSettingsRegistry streamSettingsRegistry;
+    private final PublishLanes publishLanes;
+    private final MeterRegistry meterRegistry;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    public MessageProducer(RedisTemplate<String, Object> redisTemplate) {
+    public MessageProducer(RedisTemplate<String, Object> redisTemplate, RedisScript<String> publishWithIndexScript,
+            TraceContextHeaders traceContextHeaders, EntrySizeStats entrySizeStats, StreamSettingsRegistry streamSettingsRegistry,
+            PublishLanes publishLanes, MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
+        this.publishWithIndexScript = publishWithIndexScript;
+        this.traceContextHeaders = traceContextHeaders;
+        this.entrySizeStats = entrySizeStats;
+        this.streamSettingsRegistry = streamSettingsRegistry;
+        this.publishLanes = publishLanes;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -51,7 +112,7 @@ public class MessageProducer {
      *
      * @return A unique RecordId for the message.
      */
-    private RecordId generateID() {
+    RecordId generateID() {
         long currentTimestamp = System.currentTimeMillis();
         long last = lastTimestamp.get();
 
@@ -82,13 +143,109 @@ public class MessageProducer {
 
     /**
      * Publishes a message to the specified Redis stream.
+     * The entry starts with the cached envelope headers (see EventEnvelope) and the trace context
+     * of the current span, followed by the payload fields.
+     *
+     * @param streamName The name of the Redis stream to publish the message to.
+     * @param payload    The payload of the message to be published.
+     * @return The RecordId of the published message.
+     */
+    public RecordId produce(String streamName, Object payload) {
+        return produce(streamName, payload, Map.of());
+    }
+
+    /**
+     * Publishes a message to the specified Redis stream, adding extra fields after the payload fields.
+     * This is used for producer-side metadata that is not part of the payload (e.g. the coalesced count).
+     *
+     * @param streamName  The name of the Redis stream to publish the message to.
+     * @param payload     The payload of the message to be published.
+     * @param extraFields Additional fields of the entry.
+     * @return The RecordId of the published message.
+     */
+    public RecordId produce(String streamName, Object payload, Map<String, Object> extraFields) {
+        return produce(streamName, payload, extraFields, traceContextHeaders.current());
+    }
+
+    /**
+     * Publishes a message with the given encoded trace context fields instead of those of the current span.
+     * This is used by EventCoalescer, which publishes on its own thread after the request span has ended.
+     */
+    RecordId produce(String streamName, Object payload, Map<String, Object> extraFields, Map<byte[], byte[]> traceHeaders) {
+        Assert.hasText(streamName, "Stream name must not be empty");
+        Assert.notNull(payload, "Payload must not be null");
+
+        // Check if the payload is a valid object
+        if (payload instanceof String) {
+            logger.error("Payload must be a valid object, not a string: {}", payload);
+            throw new IllegalArgumentException("Payload must be a valid object, not a string: " + payload);
+        }
+
+        return publishLanes.publish(streamName, () -> publish(streamName, payload, extraFields, traceHeaders));
+    }
+
+    // Body of produce, run in the lane of the stream
+    @SuppressWarnings("unchecked")
+    private RecordId publish(String streamName, Object payload, Map<String, Object> extraFields, Map<byte[], byte[]> traceHeaders) {
+        try {
+            // Settings of the stream, read once so the whole publish uses the same version
+            StreamSettingsRegistry.Snapshot settings = streamSettingsRegistry.snapshot(streamName);
+
+            // Generate a unique ID for the message
+            RecordId generateID = generateID();
+
+            // Encoding the payload with the cached envelope headers and the generated ID
+            Map<byte[], byte[]> entry = encodeEntry(streamName, payload, generateID, extraFields, traceHeaders);
+            long entrySize = entrySizeStats.record(streamName, payload.getClass(), entry);
+            EncodedEntry encoded = chunkIfOversized(streamName, generateID, entry, headerCount(streamName, payload, traceHeaders), entrySize, settings.settings());
+
+            ByteRecord record = StreamRecords.rawBytes(encoded.fields())
+                .withStreamKey(((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(streamName))
+                .withId(encoded.id()); // using the generated ID
+
+            // Adding the message to the stream, within the concurrency limit of the stream
+            XAddOptions options = xAddOptions(settings.settings());
+            RecordId recordId;
+            settings.acquire(streamName);
+            try {
+                recordId = redisTemplate.execute((RedisCallback<RecordId>) connection -> connection.streamCommands().xAdd(record, options));
+            } finally {
+                settings.release();
+            }
+
+            // Check if the message was added successfully
+            if (recordId == null) {
+                logger.error("Failed to publish message to stream: {}", streamName);
+                throw new RuntimeException("Failed to publish message to stream: " + streamName);
+            } 
+
+            if (settings.shouldLog()) {
+                logger.info("Published message to stream: {} with ID: {}", streamName, recordId);
+            }
+            return recordId;
+        } catch (Exception e) {
+            logger.error("Error publishing message to stream: {}", streamName, e);
+            throw new RuntimeException("Error publishing message to stream: " + streamName, e);
+        }
+    }
+
+    /**
+     * Publishes a message to the specified Redis stream and indexes it by one of its fields,
+     * in a single round trip using a server-side Lua script.
+     * The script adds the entry to the stream, records the index value -> record ID mapping
+     * in the hash "streamName:index:indexField" and bumps the counters in "streamName:counters".
+     * The index values are also kept in the sorted set "streamName:index:indexField:by-id", scored by the time
+     * of their record ID, so the script removes the index values of the entries trimmed from the stream.
      *
      * @param streamName The name of the Redis stream to publish the message to.
      * @param payload    The payload of the message to be published.
+     * @param indexField The payload field used as the index key (e.g. "orderId").
+     * @return The RecordId of the published message.
      */
-    public void produce(String streamName, Object payload) {
+    public RecordId produceWithIndex(String streamName, Object payload, String indexField) {
         Assert.hasText(streamName, "Stream name must not be empty");
         Assert.notNull(payload, "Payload must not be null");
+        Assert.hasText(indexField, "Index field must not be empty");
 
         // Check if the payload is a valid object
         if (payload instanceof String) {
@@ -96,7 +253,16 @@ public class MessageProducer {
             throw new IllegalArgumentException("Payload must be a valid object, not a string: " + payload);
         }
 
+        Map<byte[], byte[]> traceHeaders = traceContextHeaders.current();
+        return publishLanes.publish(streamName, () -> publishWithIndex(streamName, payload, indexField, traceHeaders));
+    }
+
+    // Body of produceWithIndex, run in the lane of the stream
+    private RecordId publishWithIndex(String streamName, Object payload, String indexField, Map<byte[], byte[]> traceHeaders) {
         try {
+            // Settings of the stream, read once so the whole publish uses the same version
+            StreamSettingsRegistry.Snapshot settings = streamSettingsRegistry.snapshot(streamName);
+
             // Generate a unique ID for the message
             RecordId generateID = generateID();
 
@@ -106,30 +272,467 @@ public class MessageProducer {
                 logger.error("Failed to convert payload to map: {}", payload);
                 throw new RuntimeException("Failed to convert payload to map: " + payload);
             }
-            
-            // Adding the generated ID to the message map
-            // This ID is used to uniquely identify the message in the stream
             messageMap.put("id", generateID.getValue());
-            
-            // Adding the message to the stream
-            RecordId recordId = redisTemplate.opsForStream().add(
-                ObjectRecord.create(streamName, messageMap)
-                    .withId(generateID), // using the generated ID
-                XAddOptions
-                    .maxlen(maxlen) // keeps at most `n` messages in the stream, removing older ones when the limit is reached.
-                    .approximateTrimming(approximateTrimming) // set to `true` to use approximate trimming, for best performance when you don’t need an exact limit
-            );
+
+            Object indexValue = messageMap.get(indexField);
+
+            // Script arguments are passed as raw bytes, so the entry fields are encoded
+            // with the same hash key/value serializers that opsForStream().add() would use
+            RedisSerializer<String> stringSerializer = RedisSerializer.string();
+            Map<byte[], byte[]> fields = new LinkedHashMap<>(envelopeHeaders(streamName, payload.getClass()));
+            fields.putAll(traceHeaders);
+            fields.putAll(encodeFields(messageMap));
+            long entrySize = entrySizeStats.record(streamName, payload.getClass(), fields);
+            EncodedEntry encoded = chunkIfOversized(streamName, generateID, fields, headerCount(streamName, payload, traceHeaders), entrySize, settings.settings());
+
+            List<byte[]> args = new ArrayList<>(6 + encoded.fields().size() * 2);
+            args.add(stringSerializer.serialize(encoded.id().getValue()));
+            args.add(stringSerializer.serialize(String.valueOf(settings.settings().getMaxlen())));
+            args.add(stringSerializer.serialize(settings.settings().getApproximateTrimming() ? "1" : "0"));
+            args.add(stringSerializer.serialize(indexValue == null ? "" : String.valueOf(indexValue)));
+            args.add(stringSerializer.serialize(String.valueOf(indexTtlSeconds)));
+            args.add(stringSerializer.serialize(String.valueOf(indexTrimBatchSize)));
+            for (Map.Entry<byte[], byte[]> field : encoded.fields().entrySet()) {
+                args.add(field.getKey());
+                args.add(field.getValue());
+            }
+
+            // EVALSHA is attempted first; RedisTemplate falls back to EVAL on NOSCRIPT
+            String recordId;
+            settings.acquire(streamName);
+            try {
+                recordId = redisTemplate.execute(publishWithIndexScript,
+                    RedisSerializer.byteArray(),
+                    stringSerializer,
+                    List.of(streamName, indexKey(streamName, indexField), streamName + COUNTERS_KEY_SUFFIX,
+                        indexKey(streamName, indexField) + INDEX_ORDER_KEY_SUFFIX),
+                    args.toArray());
+            } finally {
+                settings.release();
+            }
 
             // Check if the message was added successfully
             if (recordId == null) {
                 logger.error("Failed to publish message to stream: {}", streamName);
                 throw new RuntimeException("Failed to publish message to stream: " + streamName);
-            } 
+            }
 
-            logger.info("Published message to stream: {} with ID: {}", streamName, recordId);
+            if (settings.shouldLog()) {
+                logger.info("Published message to stream: {} with ID: {} (indexed by {}={})", streamName, recordId, indexField, indexValue);
+            }
+            return RecordId.of(recordId);
         } catch (Exception e) {
             logger.error("Error publishing message to stream: {}", streamName, e);
             throw new RuntimeException("Error publishing message to stream: " + streamName, e);
         }
     }
-}
+
+    /**
+     * Looks up the RecordId of a message published with produceWithIndex, without scanning the stream.
+     *
+     * @param streamName The name of the Redis stream the message was published to.
+     * @param indexField The payload field used as the index key (e.g. "orderId").
+     * @param indexValue The value of the index field to look up.
+     * @return The RecordId of the message, or null if it is not indexed, has been trimmed from the stream
+     *         or the index has expired. Entries trimmed within the same millisecond as the oldest remaining entry
+     *         stay indexed until the next trim, so the returned entry may already be gone from the stream.
+     */
+    public RecordId findRecordId(String streamName, String indexField, String indexValue) {
+        Assert.hasText(streamName, "Stream name must not be empty");
+        Assert.hasText(indexField, "Index field must not be empty");
+        Assert.hasText(indexValue, "Index value must not be empty");
+
+        String recordId = redisTemplate.execute((RedisCallback<String>) connection -> {
+            byte[] value = connection.hashCommands().hGet(
+                RedisSerializer.string().serialize(indexKey(streamName, indexField)),
+                RedisSerializer.string().serialize(indexValue));
+            return value == null ? null : RedisSerializer.string().deserialize(value);
+        });
+
+        return recordId == null ? null : RecordId.of(recordId);
+    }
+
+    /**
+     * Publishes the same message to several Redis streams in a single MULTI/EXEC round trip.
+     * The entry of every stream is encoded up front, with the cached envelope headers of that stream and its own
+     * generated "id" field; entries are not chunked here, as the chunks would be published outside the transaction.
+     *
+     * All XADD commands are queued and executed together, so either all of them are sent or none is:
+     * if queuing fails (e.g. when the connection drops before EXEC), the transaction is discarded.
+     * Note that Redis does not roll back a transaction, so a command rejected at execution time does not undo the others.
+     * The transaction runs in the lane of the first stream; the concurrency limits of the streams do not apply to it.
+     *
+     * @param streamNames The names of the Redis streams to publish the message to.
+     * @param payload     The payload of the message to be published.
+     * @return The RecordIds of the published messages, in the same order as streamNames.
+     */
+    public List<RecordId> produceAll(List<String> streamNames, Object payload) {
+        Assert.notEmpty(streamNames, "Stream names must not be empty");
+        streamNames.forEach(streamName -> Assert.hasText(streamName, "Stream name must not be empty"));
+        Assert.notNull(payload, "Payload must not be null");
+
+        Map<byte[], byte[]> traceHeaders = traceContextHeaders.current();
+        return publishLanes.publish(streamNames.get(0), () -> publishAll(streamNames, payload, traceHeaders));
+    }
+
+    // Body of produceAll, run in the lane of the first stream
+    @SuppressWarnings("unchecked")
+    private List<RecordId> publishAll(List<String> streamNames, Object payload, Map<byte[], byte[]> traceHeaders) {
+        try {
+            RedisSerializer<Object> keySerializer = (RedisSerializer<Object>) redisTemplate.getKeySerializer();
+
+            // Encoding every entry before opening the transaction, so an encoding error never leaves one open
+            List<ByteRecord> records = new ArrayList<>(streamNames.size());
+            List<XAddOptions> options = new ArrayList<>(streamNames.size());
+            for (String streamName : streamNames) {
+                // Generate a unique ID for each stream entry
+                RecordId generateID = generateID();
+
+                Map<byte[], byte[]> entry = encodeEntry(streamName, payload, generateID, Map.of(), traceHeaders);
+                entrySizeStats.record(streamName, payload.getClass(), entry);
+                records.add(StreamRecords.rawBytes(entry).withStreamKey(keySerializer.serialize(streamName)).withId(generateID));
+
+                // Each stream is trimmed with its own retention
+                options.add(xAddOptions(streamSettingsRegistry.snapshot(streamName).settings()));
+            }
+
+            List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+                connection.multi();
+                try {
+                    for (int i = 0; i < records.size(); i++) {
+                        connection.streamCommands().xAdd(records.get(i), options.get(i));
+                    }
+                } catch (RuntimeException e) {
+                    // None of the queued commands is applied
+                    connection.discard();
+                    throw e;
+                }
+                return connection.exec();
+            });
+
+            // Check if the transaction was executed
+            if (results == null || results.size() != streamNames.size()) {
+                logger.error("Failed to publish message to streams: {}", streamNames);
+                throw new RuntimeException("Failed to publish message to streams: " + streamNames);
+            }
+
+            List<RecordId> recordIds = toRecordIds(results);
+
+            logger.info("Published message to streams: {} with IDs: {}", streamNames, recordIds);
+            return recordIds;
+        } catch (Exception e) {
+            logger.error("Error publishing message to streams: {}", streamNames, e);
+            throw new RuntimeException("Error publishing message to streams: " + streamNames, e);
+        }
+    }
+
+    /**
+     * Publishes a batch of messages to the specified Redis stream in a single pipelined round trip.
+     * Every payload is converted and encoded up front, then all XADD commands are flushed together,
+     * so the cost of a round trip is shared by the whole batch.
+     *
+     * The call returns only after Redis has answered every XADD of the batch, which lets callers
+     * use it as a natural backpressure point (e.g. to stop reading input until the batch is published).
+     *
+     * @param streamName The name of the Redis stream to publish the messages to.
+     * @param payloads   The payloads of the messages to be published.
+     * @return The RecordIds of the published messages, in the same order as payloads.
+     */
+    public List<RecordId> produceBatch(String streamName, List<?> payloads) {
+        Assert.hasText(streamName, "Stream name must not be empty");
+        Assert.notEmpty(payloads, "Payloads must not be empty");
+
+        // The whole batch is published under the same span, so the trace context is encoded once
+        Map<byte[], byte[]> traceHeaders = traceContextHeaders.current();
+        return publishLanes.publish(streamName, () -> publishBatch(streamName, payloads, traceHeaders));
+    }
+
+    // Body of produceBatch, run in the lane of the stream
+    @SuppressWarnings("unchecked")
+    private List<RecordId> publishBatch(String streamName, List<?> payloads, Map<byte[], byte[]> traceHeaders) {
+        try {
+            // Settings of the stream, read once so the whole batch uses the same version
+            StreamSettingsRegistry.Snapshot settings = streamSettingsRegistry.snapshot(streamName);
+            byte[] streamKey = ((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(streamName);
+
+            // Encoding every payload before opening the pipeline
+            List<ByteRecord> records = new ArrayList<>(payloads.size());
+            for (Object payload : payloads) {
+                Assert.notNull(payload, "Payload must not be null");
+
+                // Generate a unique ID for the message
+                RecordId generateID = generateID();
+
+                Map<byte[], byte[]> entry = encodeEntry(streamName, payload, generateID, Map.of(), traceHeaders);
+                long entrySize = entrySizeStats.record(streamName, payload.getClass(), entry);
+                EncodedEntry encoded = chunkIfOversized(streamName, generateID, entry, headerCount(streamName, payload, traceHeaders), entrySize, settings.settings());
+                records.add(StreamRecords.rawBytes(encoded.fields()).withStreamKey(streamKey).withId(encoded.id()));
+            }
+
+            XAddOptions options = xAddOptions(settings.settings());
+            int pipelineBatchSize = settings.settings().getPipelineBatchSize();
+
+            // Flushing the XADD commands in pipelines of at most pipelineBatchSize commands
+            List<RecordId> recordIds = new ArrayList<>(records.size());
+            for (int from = 0; from < records.size(); from += pipelineBatchSize) {
+                List<ByteRecord> pipeline = records.subList(from, Math.min(from + pipelineBatchSize, records.size()));
+
+                List<Object> results;
+                settings.acquire(streamName);
+                try {
+                    results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        for (ByteRecord record : pipeline) {
+                            connection.streamCommands().xAdd(record, options);
+                        }
+                        return null;
+                    });
+                } finally {
+                    settings.release();
+                }
+
+                // Check if every message was added
+                if (results == null || results.size() != pipeline.size()) {
+                    logger.error("Failed to publish batch to stream: {}", streamName);
+                    throw new RuntimeException("Failed to publish batch to stream: " + streamName);
+                }
+                recordIds.addAll(toRecordIds(results));
+            }
+
+            if (settings.shouldLog()) {
+                logger.info("Published batch of {} messages to stream: {}", recordIds.size(), streamName);
+            }
+            return recordIds;
+        } catch (Exception e) {
+            logger.error("Error publishing batch to stream: {}", streamName, e);
+            throw new RuntimeException("Error publishing batch to stream: " + streamName, e);
+        }
+    }
+
+    /**
+     * Splits an oversized entry: its payload fields are published as chunks on the companion stream
+     * "streamName:chunks", and a pointer entry to publish in its place is returned. Entries up to the
+     * chunk threshold of the stream are returned unchanged, with the given ID.
+     *
+     * The chunked data is the encoded payload fields of the entry except "id", each field name and value prefixed by its
+     * length (4-byte big-endian int), so the reassembled fields decode exactly like those of an entry that was
+     * not chunked. Each chunk carries the group ID (the ID generated for the entry), its index, the chunk count
+     * and the CRC32 of the whole data; the pointer keeps the envelope headers and trace context and adds the
+     * chunk metadata (see EventEnvelope). Chunks are sent one XADD at a time before the pointer, so other
+     * publishes sharing the connection are not held up behind one large command, and consumers never see
+     * a pointer before all of its chunks. The pointer gets a new ID once the chunks are written, so it never
+     * has a lower ID than an entry published to the stream while the chunks were being sent; its "id" field
+     * holds that ID.
+     *
+     * The companion stream keeps the main stream's maxlen times the chunk count of the entry, i.e. the chunks of
+     * a full main stream of entries this size; a maxlen set for it (e.g. "PAYMENT_SUCCESS:chunks") takes precedence,
+     * but the chunks of the entry being published are always kept.
+     * If the pointer cannot be published, its chunks are left behind until they are trimmed.
+     *
+     * @param headerCount Number of leading fields of the entry (envelope headers and trace context) kept in the pointer.
+     */
+    private EncodedEntry chunkIfOversized(String streamName, RecordId generateID, Map<byte[], byte[]> entry,
+            int headerCount, long entrySize, StreamSettingsDTO settings) {
+        if (settings.getChunkThresholdBytes() <= 0 || entrySize <= settings.getChunkThresholdBytes()) {
+            return new EncodedEntry(generateID, entry);
+        }
+
+        @SuppressWarnings("unchecked")
+        RedisSerializer<Object> hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        @SuppressWarnings("unchecked")
+        RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+
+        // Keep the headers for the pointer and serialize the payload fields into one length-prefixed buffer;
+        // the "id" field is left to the pointer, which gets its ID after the chunks
+        Map<byte[], byte[]> pointer = new LinkedHashMap<>(headerCount + 9);
+        ByteBuffer data = ByteBuffer.allocate((int) entrySize + entry.size() * 2 * Integer.BYTES);
+        byte[] idField = hashKeySerializer.serialize("id");
+        int position = 0;
+        for (Map.Entry<byte[], byte[]> field : entry.entrySet()) {
+            if (position++ < headerCount) {
+                pointer.put(field.getKey(), field.getValue());
+                continue;
+            }
+            if (Arrays.equals(field.getKey(), idField)) {
+                continue;
+            }
+            data.putInt(field.getKey().length).put(field.getKey());
+            data.putInt(field.getValue().length).put(field.getValue());
+        }
+        byte[] bytes = Arrays.copyOf(data.array(), data.position());
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        String checksum = Long.toHexString(crc.getValue());
+
+        String chunkStream = streamName + CHUNK_STREAM_SUFFIX;
+        int chunkSize = settings.getChunkSizeBytes();
+        int chunkCount = (bytes.length + chunkSize - 1) / chunkSize;
+        StreamSettingsDTO chunkOverrides = streamSettingsRegistry.overrides(chunkStream);
+        long chunkMaxlen = chunkOverrides != null && chunkOverrides.getMaxlen() != null
+            ? Math.max(chunkOverrides.getMaxlen(), chunkCount)
+            : settings.getMaxlen() > Long.MAX_VALUE / chunkCount ? Long.MAX_VALUE : settings.getMaxlen() * chunkCount;
+        XAddOptions chunkOptions = XAddOptions
+            .maxlen(chunkMaxlen)
+            .approximateTrimming(chunkOverrides != null && chunkOverrides.getApproximateTrimming() != null
+                ? chunkOverrides.getApproximateTrimming()
+                : settings.getApproximateTrimming());
+
+        byte[] chunkStreamKey = RedisSerializer.string().serialize(chunkStream);
+        byte[] groupId = hashValueSerializer.serialize(generateID.getValue());
+        byte[] count = hashValueSerializer.serialize(chunkCount);
+        byte[] checksumValue = hashValueSerializer.serialize(checksum);
+
+        RecordId firstId = null;
+        RecordId lastId = null;
+        for (int index = 0; index < chunkCount; index++) {
+            Map<byte[], byte[]> chunk = new LinkedHashMap<>(5);
+            chunk.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_GROUP_ID), groupId);
+            chunk.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_INDEX), hashValueSerializer.serialize(index));
+            chunk.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_COUNT), count);
+            chunk.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_CHECKSUM), checksumValue);
+            chunk.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_DATA),
+                Arrays.copyOfRange(bytes, index * chunkSize, Math.min(bytes.length, (index + 1) * chunkSize)));
+
+            ByteRecord record = StreamRecords.rawBytes(chunk).withStreamKey(chunkStreamKey).withId(generateID());
+            RecordId chunkId = redisTemplate.execute((RedisCallback<RecordId>) connection -> connection.streamCommands().xAdd(record, chunkOptions));
+            if (chunkId == null) {
+                logger.error("Failed to publish chunk {} of {} to stream: {}", index, generateID, chunkStream);
+                throw new RuntimeException("Failed to publish chunk to stream: " + chunkStream);
+            }
+
+            if (firstId == null) {
+                firstId = chunkId;
+            }
+            lastId = chunkId;
+        }
+
+        // Generated after the chunks, so the pointer is never behind the entries published meanwhile
+        RecordId pointerId = generateID();
+
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNKED), hashValueSerializer.serialize(true));
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_STREAM), hashValueSerializer.serialize(chunkStream));
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_GROUP_ID), groupId);
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_COUNT), count);
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_CHECKSUM), checksumValue);
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_TOTAL_BYTES), hashValueSerializer.serialize(bytes.length));
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_FIRST_ID), hashValueSerializer.serialize(firstId.getValue()));
+        pointer.put(hashKeySerializer.serialize(EventEnvelope.CHUNK_LAST_ID), hashValueSerializer.serialize(lastId.getValue()));
+        pointer.put(idField, hashValueSerializer.serialize(pointerId.getValue()));
+
+        meterRegistry.counter("redis.stream.chunked", "stream", streamName).increment();
+        logger.info("Split entry {} of stream {} ({} bytes) into {} chunks on {}", pointerId, streamName, entrySize, chunkCount, chunkStream);
+        return new EncodedEntry(pointerId, pointer);
+    }
+
+    // Number of leading fields of an entry that are envelope headers or trace context
+    private int headerCount(String streamName, Object payload, Map<byte[], byte[]> traceHeaders) {
+        return envelopeHeaders(streamName, payload.getClass()).size() + traceHeaders.size();
+    }
+
+    // XADD options applying the retention of the stream
+    private XAddOptions xAddOptions(StreamSettingsDTO settings) {
+        return XAddOptions
+            .maxlen(settings.getMaxlen()) // keeps at most `n` messages in the stream, removing older ones when the limit is reached.
+            .approximateTrimming(settings.getApproximateTrimming()); // set to `true` to use approximate trimming, for best performance when you don’t need an exact limit
+    }
+
+    // Converts the raw results of a transaction or pipeline of XADD commands to RecordIds
+    private List<RecordId> toRecordIds(List<Object> results) {
+        List<RecordId> recordIds = new ArrayList<>(results.size());
+        for (Object result : results) {
+            recordIds.add(result instanceof RecordId recordId ? recordId : RecordId.of(String.valueOf(result)));
+        }
+        return recordIds;
+    }
+
+    /**
+     * Converts a payload to the encoded fields of a stream entry: the cached envelope headers and trace context,
+     * followed by the payload fields and the generated "id" field.
+     * This is package-private so that MessageProducerWarmup can prime the conversion path without publishing.
+     *
+     * @param streamName   The name of the Redis stream the entry is meant for.
+     * @param payload      The payload of the message.
+     * @param generateID   The generated ID of the message.
+     * @param extraFields  Additional fields of the entry, added after the payload fields.
+     * @param traceHeaders The encoded trace context fields, added after the envelope headers.
+     * @return The encoded fields of the stream entry.
+     */
+    Map<byte[], byte[]> encodeEntry(String streamName, Object payload, RecordId generateID, Map<String, Object> extraFields,
+            Map<byte[], byte[]> traceHeaders) {
+        // Check if the payload is a valid object
+        if (payload instanceof String) {
+            logger.error("Payload must be a valid object, not a string: {}", payload);
+            throw new IllegalArgumentException("Payload must be a valid object, not a string: " + payload);
+        }
+
+        // Creating a map from the payload object
+        Map<String, Object> messageMap = Converter.toMap(payload);
+        if (messageMap == null) {
+            logger.error("Failed to convert payload to map: {}", payload);
+            throw new RuntimeException("Failed to convert payload to map: " + payload);
+        }
+
+        // Adding the generated ID to the message map
+        // This ID is used to uniquely identify the message in the stream
+        messageMap.put("id", generateID.getValue());
+        messageMap.putAll(extraFields);
+
+        // Prepending the cached envelope headers and trace context; only the payload fields are encoded per event
+        Map<byte[], byte[]> entry = new LinkedHashMap<>(envelopeHeaders(streamName, payload.getClass()));
+        entry.putAll(traceHeaders);
+        entry.putAll(encodeFields(messageMap));
+        return entry;
+    }
+
+    /**
+     * Encodes the fields of a message map with the hash key/value serializers of the RedisTemplate,
+     * producing the same bytes as opsForStream().add() would write for each field.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<byte[], byte[]> encodeFields(Map<String, Object> messageMap) {
+        RedisSerializer<Object> hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+
+        Map<byte[], byte[]> fields = new LinkedHashMap<>(messageMap.size() + 1);
+        for (Map.Entry<String, Object> field : messageMap.entrySet()) {
+            fields.put(hashKeySerializer.serialize(field.getKey()), hashValueSerializer.serialize(field.getValue()));
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the encoded envelope headers for the given stream and payload type.
+     * The headers are serialized on first use and cached, so publishing an event only pays
+     * for the serialization of its payload fields.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<byte[], byte[]> envelopeHeaders(String streamName, Class<?> payloadType) {
+        String eventType = payloadType.getSimpleName();
+
+        return envelopeHeaders.computeIfAbsent(streamName + "|" + eventType, key -> {
+            RedisSerializer<Object> hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+            RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+
+            Map<byte[], byte[]> headers = new LinkedHashMap<>(4);
+            headers.put(hashKeySerializer.serialize(EventEnvelope.EVENT_TYPE), hashValueSerializer.serialize(eventType));
+            headers.put(hashKeySerializer.serialize(EventEnvelope.SCHEMA_VERSION), hashValueSerializer.serialize(schemaVersion));
+            headers.put(hashKeySerializer.serialize(EventEnvelope.PRODUCER_INSTANCE), hashValueSerializer.serialize(producerInstance()));
+            headers.put(hashKeySerializer.serialize(EventEnvelope.STREAM_NAME), hashValueSerializer.serialize(streamName));
+            return Collections.unmodifiableMap(headers);
+        });
+    }
+
+    // Identifies this producer instance as "applicationName@hostname"
+    private String producerInstance() {
+        try {
+            return applicationName + "@" + InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return applicationName + "@unknown";
+        }
+    }
+
+    // Key of the index hash for the given stream and field, e.g. "PAYMENT_SUCCESS:index:orderId"
+    private String indexKey(String streamName, String indexField) {
+        return streamName + INDEX_KEY_SUFFIX + indexField;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentBankRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentCCRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentPaypalRequestDTO;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+
+/**
+ * MessageProducerWarmup primes the publish path before the application reports itself ready.
+ * Without it, the first requests after a start pay for opening the Lettuce connection,
+ * building the Jackson serializers of every payload type and running MessageProducer in the interpreter.
+ *
+ * The warm-up runs as an ApplicationRunner: Spring Boot publishes the ACCEPTING_TRAFFIC readiness state
+ * only after all runners have completed, so the readiness probe stays down until the warm-up is done.
+ * If Redis cannot be reached the warm-up fails and the application does not start.
+ */
+
+@Component
+public class MessageProducerWarmup implements ApplicationRunner {
+    // enabled: Set to false to skip the warm-up (e.g. for local development)
+    // iterations: Number of synthetic encode and generateID calls per payload type; enough for the JIT to compile the hot path
+    // dryRunPublishes: Number of real XADDs (and indexed publishes) to the scratch stream; 0 disables the dry run
+    // scratchStream: Stream used by the dry run; it is deleted, and its entry size statistics removed, when the warm-up completes
+    @Value("${redis.stream.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${redis.stream.warmup.iterations:10000}")
+    private int iterations;
+
+    @Value("${redis.stream.warmup.dry-run-publishes:0}")
+    private int dryRunPublishes;
+
+    @Value("${redis.stream.warmup.scratch-stream:WARMUP_SCRATCH}")
+    private String scratchStream;
+
+    private final MessageProducer messageProducer;
+    private final EntrySizeStats entrySizeStats;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public MessageProducerWarmup(MessageProducer messageProducer, EntrySizeStats entrySizeStats, RedisTemplate<String, Object> redisTemplate) {
+        this.messageProducer = messageProducer;
+        this.entrySizeStats = entrySizeStats;
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            logger.info("Message producer warm-up is disabled");
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        // Open and verify the Redis connection
+        String pong = redisTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+        if (!"PONG".equalsIgnoreCase(pong)) {
+            logger.error("Redis did not answer PING during warm-up: {}", pong);
+            throw new IllegalStateException("Redis did not answer PING during warm-up: " + pong);
+        }
+
+        // Prime the Jackson serializers, the envelope header cache and the JIT for every payload type
+        List<Object> payloads = samplePayloads();
+        for (Object payload : payloads) {
+            for (int i = 0; i < iterations; i++) {
+                RecordId generateID = messageProducer.generateID();
+                messageProducer.encodeEntry(scratchStream, payload, generateID, Map.of(), Map.of());
+            }
+        }
+
+        // Optionally exercise the full publish path (XADD and the indexed publish script) against a scratch stream
+        if (dryRunPublishes > 0) {
+            try {
+                for (int i = 0; i < dryRunPublishes; i++) {
+                    for (Object payload : payloads) {
+                        messageProducer.produce(scratchStream, payload);
+                    }
+                    messageProducer.produceWithIndex(scratchStream, payloads.get(0), "orderId");
+                }
+            } finally {
+                redisTemplate.delete(List.of(scratchStream,
+                    scratchStream + ":index:orderId",
+                    scratchStream + ":index:orderId:by-id",
+                    scratchStream + ":counters",
+                    scratchStream + MessageProducer.CHUNK_STREAM_SUFFIX));
+
+                // The dry run must not show up in the entry size metrics and the footprint endpoint
+                entrySizeStats.remove(scratchStream);
+            }
+        }
+
+        logger.info("Message producer warm-up completed in {} ms ({} payload types, {} iterations, {} dry-run publishes)",
+            (System.nanoTime() - start) / 1_000_000, payloads.size(), iterations, dryRunPublishes);
+    }
+
+    // One synthetic instance of every payload type published by the application
+    private List<Object> samplePayloads() {
+        BigDecimal amount = new BigDecimal("1.00");
+
+        OrderPayment orderPayment = new OrderPayment();
+        orderPayment.setId(0L);
+        orderPayment.setOrderId("WARMUP");
+        orderPayment.setAmount(amount);
+        orderPayment.setCurrency("USD");
+        orderPayment.setPaymentMethod("CREDIT_CARD");
+        orderPayment.setPaymentStatus("SUCCESS");
+        orderPayment.setCardNumber("4111111111111111");
+        orderPayment.setCardExpiry("12/30");
+        orderPayment.setCardCvv("123");
+        orderPayment.setTransactionId("TXNWARMUP");
+
+        return List.of(
+            new CreateOrderPaymentRequestDTO("WARMUP", amount, "USD", "CREDIT_CARD", "4111111111111111", "12/30", "123", null, null, null),
+            new PaymentCCRequestDTO("WARMUP", amount, "USD", "4111111111111111", "12/30", "123"),
+            new PaymentPaypalRequestDTO("WARMUP", amount, "USD", "warmup@example.com"),
+            new PaymentBankRequestDTO("WARMUP", amount, "USD", "1234567890", "Warmup Bank"),
+            orderPayment);
+    }
+}
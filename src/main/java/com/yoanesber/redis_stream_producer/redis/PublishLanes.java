@@ -0,0 +1,293 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.config.redis.PublishLaneProperties;
+import com.yoanesber.redis_stream_producer.config.redis.PublishLaneProperties.LaneProfile;
+
+/**
+ * PublishLanes schedules the publishes of MessageProducer by priority.
+ * Every stream is assigned to a lane (e.g. PAYMENT_SUCCESS to "high", PAYMENT_IMPORT to "bulk"), each lane has
+ * its own bounded queue, and a fixed pool of workers drains the lanes with smooth weighted round robin:
+ * while several lanes have work waiting, each gets publish slots in proportion to its weight, and an idle lane
+ * gives its share to the others. A flood of low-priority publishes therefore fills its own lane only.
+ *
+ * Weights only decide which publish a free worker takes next, and a worker is held for the whole publish:
+ * a produceBatch of a bulk import occupies its worker until the whole batch is written, so as many bulk batches
+ * as there are workers can keep every shared worker busy. A lane can therefore reserve workers
+ * (reservedWorkers, 1 for "high" by default) that serve that lane only. A high-priority publish then waits at most
+ * for the publish its reserved worker is running, even while bulk batches hold all the shared workers; the price is
+ * one more thread and up to one more command in flight per reserved worker. Reserved workers are added to the
+ * shared workers, which still serve every lane, including the high one.
+ *
+ * The caller blocks until its publish has completed, so MessageProducer keeps its synchronous API.
+ * When a lane is full, the caller waits up to offerTimeoutMs for room and the publish is then rejected.
+ * A caller waits at most publishTimeoutMs for its publish: a publish still waiting in its lane is then dropped,
+ * but one a worker has already started may still complete after the caller has given up.
+ *
+ * Metrics (tagged by lane):
+ * - redis.stream.lane.depth: publishes waiting in the lane
+ * - redis.stream.lane.wait: time a publish waited in the lane before a worker picked it up
+ * - redis.stream.lane.rejected: publishes rejected because the lane stayed full
+ */
+
+@Component
+public class PublishLanes implements SmartLifecycle {
+    private final PublishLaneProperties properties;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<String, Lane> lanes;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    // Publishes made by a worker (e.g. while another publish is running) must not wait for a worker
+    private static final ThreadLocal<Boolean> WORKER = ThreadLocal.withInitial(() -> false);
+
+    private record Task(CompletableFuture<Object> result, Supplier<?> publish, long enqueuedAt) {
+    }
+
+    // Only the weighted round robin state (current) is guarded by the PublishLanes monitor
+    private static final class Lane {
+        private final String name;
+        private final int weight;
+        private final int reservedWorkers;
+        private final BlockingQueue<Task> queue;
+        private final Timer wait;
+        private final Counter rejected;
+        private int current;
+
+        private Lane(String name, LaneProfile profile, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.weight = Math.max(1, profile.getWeight());
+            this.reservedWorkers = Math.max(0, profile.getReservedWorkers());
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, profile.getCapacity()));
+            this.wait = Timer.builder("redis.stream.lane.wait")
+                .description("Time a publish waited in its lane before being sent")
+                .tag("lane", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+            this.rejected = Counter.builder("redis.stream.lane.rejected")
+                .description("Publishes rejected because the lane stayed full")
+                .tag("lane", name)
+                .register(meterRegistry);
+            Gauge.builder("redis.stream.lane.depth", queue, BlockingQueue::size)
+                .description("Publishes waiting in the lane")
+                .tag("lane", name)
+                .register(meterRegistry);
+        }
+    }
+
+    public PublishLanes(PublishLaneProperties properties, MeterRegistry meterRegistry) {
+        Assert.isTrue(properties.getLanes().containsKey(properties.getDefaultLane()),
+            "Default lane is not defined: " + properties.getDefaultLane());
+        properties.getStreams().forEach((streamName, lane) -> Assert.isTrue(properties.getLanes().containsKey(lane),
+            "Lane of stream " + streamName + " is not defined: " + lane));
+
+        this.properties = properties;
+
+        Map<String, Lane> configured = new LinkedHashMap<>();
+        properties.getLanes().forEach((name, profile) -> configured.put(name, new Lane(name, profile, meterRegistry)));
+        this.lanes = configured;
+    }
+
+    /**
+     * Runs a publish to the given stream in the lane of the stream and waits for its result.
+     *
+     * @param streamName The name of the Redis stream the publish writes to; selects the lane.
+     * @param publish    The publish to run.
+     * @return The result of the publish.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T publish(String streamName, Supplier<T> publish) {
+        if (!running || WORKER.get()) {
+            return publish.get();
+        }
+
+        Lane lane = lanes.get(properties.getStreams().getOrDefault(streamName, properties.getDefaultLane()));
+        Task task = new Task(new CompletableFuture<>(), publish, System.nanoTime());
+
+        try {
+            if (!lane.queue.offer(task, properties.getOfferTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                lane.rejected.increment();
+                throw new RuntimeException("Publish lane " + lane.name + " is full, rejected publish to stream: " + streamName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for publish lane " + lane.name, e);
+        }
+
+        // stop() may have drained the lanes between the running check and the offer; a task it did not see
+        // is still in the queue, and is taken back here so its caller is not left waiting
+        if (!running && lane.queue.remove(task)) {
+            task.result().completeExceptionally(
+                new RuntimeException("Publish lanes are stopped, rejected publish to stream: " + streamName));
+        }
+
+        synchronized (this) {
+            notifyAll();
+        }
+
+        try {
+            return (T) task.result().get(properties.getPublishTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Error publishing to stream: " + streamName, e.getCause());
+        } catch (TimeoutException e) {
+            // A worker skips the task if it has not started it yet
+            task.result().cancel(false);
+            throw new RuntimeException("Timed out waiting for publish to stream: " + streamName + " in lane " + lane.name, e);
+        } catch (InterruptedException e) {
+            task.result().cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for publish to stream: " + streamName, e);
+        }
+    }
+
+    // Picks the next task with smooth weighted round robin over the lanes that have work waiting,
+    // or the next task of its lane for a reserved worker
+    private synchronized Task next(Lane reservedFor) throws InterruptedException {
+        while (running) {
+            if (reservedFor != null) {
+                Task task = reservedFor.queue.poll();
+                if (task != null) {
+                    reservedFor.wait.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+                    return task;
+                }
+                wait();
+                continue;
+            }
+
+            Lane selected = null;
+            int totalWeight = 0;
+            for (Lane lane : lanes.values()) {
+                if (lane.queue.isEmpty()) {
+                    continue;
+                }
+                lane.current += lane.weight;
+                totalWeight += lane.weight;
+                if (selected == null || lane.current > selected.current) {
+                    selected = lane;
+                }
+            }
+
+            if (selected != null) {
+                selected.current -= totalWeight;
+                Task task = selected.queue.poll();
+                selected.wait.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+                return task;
+            }
+
+            wait();
+        }
+        return null;
+    }
+
+    private void work(Lane reservedFor) {
+        WORKER.set(true);
+        while (running) {
+            Task task;
+            try {
+                task = next(reservedFor);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (task == null) {
+                break;
+            }
+            if (task.result().isDone()) {
+                // The caller has given up waiting
+                continue;
+            }
+
+            try {
+                task.result().complete(task.publish().get());
+            } catch (Throwable e) {
+                task.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        running = true;
+        for (int i = 0; i < Math.max(1, properties.getWorkers()); i++) {
+            startWorker(null, "publish-lane-worker-" + i);
+        }
+        for (Lane lane : lanes.values()) {
+            for (int i = 0; i < lane.reservedWorkers; i++) {
+                startWorker(lane, "publish-lane-worker-" + lane.name + "-" + i);
+            }
+        }
+
+        logger.info("Publish lanes started: {}", lanes.keySet());
+    }
+
+    private void startWorker(Lane reservedFor, String name) {
+        Thread worker = new Thread(() -> work(reservedFor), name);
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+
+        // Publishes still waiting are drained here so their callers are not left blocked
+        for (Lane lane : lanes.values()) {
+            Task task;
+            while ((task = lane.queue.poll()) != null) {
+                if (task.result().isDone()) {
+                    continue;
+                }
+                try {
+                    task.result().complete(task.publish().get());
+                } catch (Throwable e) {
+                    task.result().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
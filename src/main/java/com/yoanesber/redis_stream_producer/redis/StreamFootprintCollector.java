@@ -0,0 +1,203 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.dto.EntrySizeStatsDTO;
+import com.yoanesber.redis_stream_producer.dto.StreamFootprintDTO;
+
+/**
+ * StreamFootprintCollector reports the memory footprint of the Redis streams written by the producer:
+ * XLEN, MEMORY USAGE, the encoded entry sizes per payload type (see EntrySizeStats) and the memory
+ * the stream is projected to use once it holds as many entries as its retention (MAXLEN) allows.
+ *
+ * The footprint is read on demand by the "streams" actuator endpoint, and refreshed periodically
+ * in the background to back these gauges (tagged by stream):
+ * - redis.stream.length: XLEN
+ * - redis.stream.memory.usage: MEMORY USAGE of the stream key
+ * - redis.stream.memory.projected: projected memory at the configured retention
+ *
+ * Gauges are only registered for the configured streams and the streams the producer has published to;
+ * any other stream can be queried through the endpoint, but its footprint is not kept or exported,
+ * so arbitrary stream names cannot grow the set of meters.
+ *
+ * MEMORY USAGE samples the given number of entries (SAMPLES); 0 makes Redis walk the whole stream,
+ * which is exact but O(n) on the Redis main thread.
+ */
+
+@Component
+public class StreamFootprintCollector implements SmartLifecycle {
+    // streams: Streams reported even before the producer has published to them
+    // refreshMs: Delay between two background refreshes of the gauges; 0 disables the background refresh
+    // memoryUsageSamples: SAMPLES argument of MEMORY USAGE
+    @Value("${redis.stream.footprint.streams:PAYMENT_SUCCESS,PAYMENT_FAILED,PAYMENT_IMPORT}")
+    private List<String> streams;
+
+    @Value("${redis.stream.footprint.refresh-ms:60000}")
+    private long refreshMs;
+
+    @Value("${redis.stream.footprint.memory-usage-samples:5}")
+    private int memoryUsageSamples;
+
+    // Latest footprint of each stream, read by the gauges
+    private final Map<String, StreamFootprintDTO> footprints = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    private final StreamSettingsRegistry streamSettingsRegistry;
+    private final EntrySizeStats entrySizeStats;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public StreamFootprintCollector(StreamSettingsRegistry streamSettingsRegistry, EntrySizeStats entrySizeStats,
+            RedisTemplate<String, Object> redisTemplate, MeterRegistry meterRegistry) {
+        this.streamSettingsRegistry = streamSettingsRegistry;
+        this.entrySizeStats = entrySizeStats;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Reads the footprint of every configured stream and of every stream the producer has published to.
+     *
+     * @return The footprints, configured streams first.
+     */
+    public List<StreamFootprintDTO> collect() {
+        Set<String> streamNames = new LinkedHashSet<>(streams);
+        streamNames.addAll(entrySizeStats.streams());
+
+        List<StreamFootprintDTO> result = new ArrayList<>(streamNames.size());
+        for (String streamName : streamNames) {
+            result.add(collect(streamName));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the footprint of a stream.
+     *
+     * @param streamName The name of the Redis stream.
+     * @return The footprint of the stream.
+     */
+    public StreamFootprintDTO collect(String streamName) {
+        Assert.hasText(streamName, "Stream name must not be empty");
+
+        byte[] streamKey = RedisSerializer.string().serialize(streamName);
+        long[] lengthAndMemory = redisTemplate.execute((RedisCallback<long[]>) connection -> {
+            Long length = connection.streamCommands().xLen(streamKey);
+            Object memoryUsage = connection.execute("MEMORY",
+                RedisSerializer.string().serialize("USAGE"),
+                streamKey,
+                RedisSerializer.string().serialize("SAMPLES"),
+                RedisSerializer.string().serialize(String.valueOf(memoryUsageSamples)));
+            return new long[] {
+                length == null ? 0 : length,
+                memoryUsage instanceof Number number ? number.longValue() : 0 };
+        });
+
+        long length = lengthAndMemory[0];
+        long memoryUsage = lengthAndMemory[1];
+        long maxlen = streamSettingsRegistry.settings(streamName).getMaxlen();
+        List<EntrySizeStatsDTO> entrySizes = entrySizeStats.snapshot(streamName);
+
+        // Prefer the memory Redis actually uses per entry; fall back to the encoded size for an empty stream
+        double bytesPerEntry = length > 0 ? (double) memoryUsage / length : averageEntrySize(entrySizes);
+        long projectedRetentionBytes = Math.round(bytesPerEntry * maxlen);
+
+        StreamFootprintDTO footprint = new StreamFootprintDTO(streamName, length, memoryUsage, maxlen,
+            bytesPerEntry, projectedRetentionBytes, entrySizes);
+
+        if (isKnown(streamName) && footprints.put(streamName, footprint) == null) {
+            registerGauges(streamName);
+        }
+        return footprint;
+    }
+
+    // Configured streams and streams the producer has published to
+    private boolean isKnown(String streamName) {
+        return streams.contains(streamName) || entrySizeStats.streams().contains(streamName);
+    }
+
+    // Average encoded entry size over all payload types of a stream
+    private double averageEntrySize(List<EntrySizeStatsDTO> entrySizes) {
+        long count = 0;
+        double total = 0;
+        for (EntrySizeStatsDTO entrySize : entrySizes) {
+            count += entrySize.getCount();
+            total += entrySize.getAverageBytes() * entrySize.getCount();
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    private void registerGauges(String streamName) {
+        Gauge.builder("redis.stream.length", footprints, latest -> latest.get(streamName).getLength())
+            .description("Number of entries in the stream (XLEN)")
+            .tag("stream", streamName)
+            .register(meterRegistry);
+        Gauge.builder("redis.stream.memory.usage", footprints, latest -> latest.get(streamName).getMemoryUsageBytes())
+            .description("Memory used by the stream (MEMORY USAGE)")
+            .baseUnit("bytes")
+            .tag("stream", streamName)
+            .register(meterRegistry);
+        Gauge.builder("redis.stream.memory.projected", footprints, latest -> latest.get(streamName).getProjectedRetentionBytes())
+            .description("Projected memory of the stream at the configured retention")
+            .baseUnit("bytes")
+            .tag("stream", streamName)
+            .register(meterRegistry);
+    }
+
+    private void refresh() {
+        try {
+            collect();
+        } catch (Exception e) {
+            logger.error("Error collecting the stream footprints", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (refreshMs <= 0) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stream-footprint-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::refresh, 0, refreshMs, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
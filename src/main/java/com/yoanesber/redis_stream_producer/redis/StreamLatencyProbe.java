@@ -0,0 +1,186 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import com.yoanesber.redis_stream_producer.dto.StreamCanaryDTO;
+
+/**
+ * StreamLatencyProbe measures how long it takes until a published event is readable by consumers.
+ * It periodically publishes a canary entry (StreamCanaryDTO) through MessageProducer to each configured stream
+ * and reads it back with a blocking XREAD on its own connection, recording:
+ *
+ * - redis.stream.probe.publish: time spent in MessageProducer.produce (encode + XADD round trip)
+ * - redis.stream.probe.visible: time from the start of the publish until the canary is returned by XREAD
+ * - redis.stream.probe.timeouts: canaries not readable within the read timeout
+ *
+ * The timers publish percentile histograms, tagged by stream.
+ * Canary entries have the envelope eventType "StreamCanaryDTO" (EventEnvelope.CANARY_EVENT_TYPE) and canary=true,
+ * so consumers can skip them. Note that canaries count towards the stream MAXLEN like any other entry.
+ *
+ * The probe is disabled by default.
+ */
+
+@Component
+public class StreamLatencyProbe implements SmartLifecycle {
+    // enabled: Set to true to run the probe
+    // streams: Streams to probe
+    // intervalMs: Delay between two probe rounds
+    // readTimeoutMs: Maximum time to wait for a canary to become readable
+    @Value("${redis.stream.probe.enabled:false}")
+    private boolean enabled;
+
+    @Value("${redis.stream.probe.streams:PAYMENT_SUCCESS,PAYMENT_FAILED}")
+    private List<String> streams;
+
+    @Value("${redis.stream.probe.interval-ms:5000}")
+    private long intervalMs;
+
+    @Value("${redis.stream.probe.read-timeout-ms:2000}")
+    private long readTimeoutMs;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ScheduledExecutorService executor;
+    private RedisConnection readConnection;
+    private String probeId;
+    private volatile boolean running;
+
+    private final MessageProducer messageProducer;
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final MeterRegistry meterRegistry;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public StreamLatencyProbe(MessageProducer messageProducer, RedisConnectionFactory redisConnectionFactory, MeterRegistry meterRegistry) {
+        this.messageProducer = messageProducer;
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private void probe() {
+        for (String streamName : streams) {
+            try {
+                probe(streamName);
+            } catch (Exception e) {
+                logger.error("Error probing stream: {}", streamName, e);
+            }
+        }
+    }
+
+    private void probe(String streamName) {
+        StreamCanaryDTO canary = new StreamCanaryDTO(true, probeId, sequence.incrementAndGet(), System.currentTimeMillis());
+
+        long start = System.nanoTime();
+        RecordId recordId = messageProducer.produce(streamName, canary);
+        long published = System.nanoTime();
+
+        Timer.builder("redis.stream.probe.publish")
+            .description("Time spent publishing a canary through MessageProducer")
+            .tag("stream", streamName)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(published - start, TimeUnit.NANOSECONDS);
+
+        // Read from just below the canary ID, so the first entry returned is the canary itself
+        // (unless another producer wrote in between, in which case the read continues)
+        byte[] streamKey = RedisSerializer.string().serialize(streamName);
+        RecordId offset = recordId.getSequence() > 0
+            ? RecordId.of(recordId.getTimestamp(), recordId.getSequence() - 1)
+            : RecordId.of(recordId.getTimestamp() - 1, Long.MAX_VALUE);
+        long deadline = published + TimeUnit.MILLISECONDS.toNanos(readTimeoutMs);
+
+        while (System.nanoTime() < deadline) {
+            long remainingMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+
+            @SuppressWarnings("unchecked")
+            List<ByteRecord> records = readConnection.streamCommands().xRead(
+                StreamReadOptions.empty().block(Duration.ofMillis(remainingMs)).count(16),
+                StreamOffset.create(streamKey, ReadOffset.from(offset)));
+
+            if (records == null || records.isEmpty()) {
+                continue;
+            }
+
+            for (ByteRecord record : records) {
+                if (record.getId().equals(recordId)) {
+                    Timer.builder("redis.stream.probe.visible")
+                        .description("Time from publishing a canary until it is returned by XREAD")
+                        .tag("stream", streamName)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                offset = record.getId();
+            }
+        }
+
+        Counter.builder("redis.stream.probe.timeouts")
+            .tag("stream", streamName)
+            .register(meterRegistry)
+            .increment();
+        logger.warn("Canary {} was not readable from stream {} within {} ms", recordId, streamName, readTimeoutMs);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            probeId = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            probeId = "unknown";
+        }
+
+        // Blocking XREADs run on a connection of their own, so they never delay the publish path
+        readConnection = redisConnectionFactory.getConnection();
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stream-latency-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::probe, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+
+        logger.info("Stream latency probe started for streams: {}", streams);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (readConnection != null) {
+            readConnection.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,666 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentBankRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentCCRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.PaymentPaypalRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.ReplayJobDTO;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+
+/**
+ * StreamReplayer re-publishes events after an incident, as background jobs started from the "replay" actuator endpoint.
+ * A job reads its source in streaming fashion, either
+ * - STREAM: a window of a source stream, read with XRANGE one batch at a time (e.g. PAYMENT_SUCCESS into a new stream);
+ *   the end of the window is fixed to the last entry when the job starts, and chunked entries are reassembled, or
+ * - NDJSON: a file of payloads (one JSON object per line) from the replay directory, e.g. a spooled file or an export,
+ * and publishes the records to the target stream through MessageProducer.produceBatch, so they get fresh IDs and
+ * are re-encoded exactly like live events (envelope headers, chunking, retention, publish lane of the target stream).
+ *
+ * Batches are paced to the target rate of the job, so a replay cannot overwhelm Redis or the consumers.
+ * After every batch the job is checkpointed in the Redis hash "PRODUCER_REPLAY:checkpoints" (position and counters);
+ * starting a job again with the same ID resumes it after its last checkpoint. Delivery is at least once: the batch
+ * in flight when a job is interrupted is published again on resume.
+ * A running job holds a lease in Redis ("PRODUCER_REPLAY:lease:{jobId}"), so it cannot run twice across instances.
+ * The lease is taken before the checkpoint is read and holds a random token of the run that owns it; it is renewed
+ * and released by Lua scripts that compare that token first, and a run that finds its lease taken over stops
+ * without writing its checkpoint again.
+ *
+ * Metrics (tagged by job):
+ * - redis.stream.replay.published: records published
+ * - redis.stream.replay.skipped: source records skipped (canaries, unknown payload types, invalid records)
+ */
+
+@Component
+public class StreamReplayer implements SmartLifecycle {
+    // directory: NDJSON files are only read from this directory
+    // ratePerSecond: Default target publish rate of a job; 0 for no limit
+    // batchSize: Default maximum number of records per batch; batches are also capped to a tenth of the rate
+    // maxJobs: Maximum number of jobs running at once on this instance
+    // leaseMs: Expiry of the lease of a running job, renewed while the job runs
+    @Value("${redis.stream.replay.directory:replay}")
+    private String directory;
+
+    @Value("${redis.stream.replay.rate-per-second:1000}")
+    private double ratePerSecond;
+
+    @Value("${redis.stream.replay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${redis.stream.replay.max-jobs:2}")
+    private int maxJobs;
+
+    @Value("${redis.stream.replay.lease-ms:30000}")
+    private long leaseMs;
+
+    public static final String CHECKPOINTS_KEY = "PRODUCER_REPLAY:checkpoints";
+    private static final String LEASE_KEY_PREFIX = "PRODUCER_REPLAY:lease:";
+
+    public static final String SOURCE_STREAM = "STREAM";
+    public static final String SOURCE_NDJSON = "NDJSON";
+
+    // Payload types that can be replayed, keyed by event type (simple class name, see EventEnvelope)
+    private static final Map<String, Class<?>> PAYLOAD_TYPES = Map.of(
+        OrderPayment.class.getSimpleName(), OrderPayment.class,
+        CreateOrderPaymentRequestDTO.class.getSimpleName(), CreateOrderPaymentRequestDTO.class,
+        PaymentCCRequestDTO.class.getSimpleName(), PaymentCCRequestDTO.class,
+        PaymentPaypalRequestDTO.class.getSimpleName(), PaymentPaypalRequestDTO.class,
+        PaymentBankRequestDTO.class.getSimpleName(), PaymentBankRequestDTO.class);
+
+    // Fields of a source entry that are not payload fields; MessageProducer writes them again
+    private static final Set<String> NON_PAYLOAD_FIELDS = Set.of(EventEnvelope.EVENT_TYPE, EventEnvelope.SCHEMA_VERSION,
+        EventEnvelope.PRODUCER_INSTANCE, EventEnvelope.STREAM_NAME, EventEnvelope.TRACEPARENT, EventEnvelope.TRACESTATE, "id");
+
+    // Cancellation flags of the jobs running on this instance, keyed by job ID
+    private final Map<String, AtomicBoolean> runningJobs = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    private final MessageProducer messageProducer;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisScript<Long> replayLeaseRenewScript;
+    private final RedisScript<Long> replayLeaseReleaseScript;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper payloadMapper;
+    private final MeterRegistry meterRegistry;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // Lease of a job held by one run of the job; owner is the random token stored as the value of the lease
+    private record Lease(String jobId, String owner) {
+    }
+
+    // Thrown when a run finds that its lease has expired and been taken over by another run
+    private static final class LeaseLostException extends RuntimeException {
+        private LeaseLostException(String jobId) {
+            super("Lost the lease of replay job: " + jobId);
+        }
+    }
+
+    public StreamReplayer(MessageProducer messageProducer, RedisTemplate<String, Object> redisTemplate,
+            RedisScript<Long> replayLeaseRenewScript, RedisScript<Long> replayLeaseReleaseScript,
+            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.messageProducer = messageProducer;
+        this.redisTemplate = redisTemplate;
+        this.replayLeaseRenewScript = replayLeaseRenewScript;
+        this.replayLeaseReleaseScript = replayLeaseReleaseScript;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+
+        // Source entries may carry producer-side fields (e.g. coalescedCount) that are not part of the payload
+        this.payloadMapper = objectMapper.copy().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Starts a replay job, or resumes it after its last checkpoint if a job with the same ID was interrupted.
+     * A resumed job keeps its source and target; only its rate and batch size can be changed.
+     *
+     * @param jobId   The ID of the job.
+     * @param request The definition of the job (source, target stream, payload type, rate and batch size).
+     * @return The job, as checkpointed when it was started.
+     */
+    public ReplayJobDTO startJob(String jobId, ReplayJobDTO request) {
+        Assert.hasText(jobId, "Job ID must not be empty");
+        Assert.notNull(request, "Replay request must not be null");
+        Assert.isTrue(running, "Replay is not running");
+        Assert.isTrue(runningJobs.size() < maxJobs, "Too many replay jobs running, at most " + maxJobs);
+        Assert.isTrue(request.getRatePerSecond() == null || request.getRatePerSecond() >= 0, "Rate must not be negative");
+        Assert.isTrue(request.getBatchSize() == null || request.getBatchSize() > 0, "Batch size must be greater than zero");
+
+        // The lease is taken first, so the checkpoint read here cannot be resumed by another instance at the same time
+        Lease lease = new Lease(jobId, UUID.randomUUID().toString());
+        Assert.isTrue(acquireLease(lease), "Replay job is already running: " + jobId);
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ReplayJobDTO job;
+        try {
+            job = checkpoint(jobId);
+            if (job == null) {
+                job = newJob(jobId, request);
+            } else {
+                Assert.isTrue(!"COMPLETED".equals(job.getStatus()), "Replay job already completed, use a new job ID: " + jobId);
+                if (request.getRatePerSecond() != null) {
+                    job.setRatePerSecond(request.getRatePerSecond());
+                }
+                if (request.getBatchSize() != null) {
+                    job.setBatchSize(request.getBatchSize());
+                }
+            }
+
+            runningJobs.put(jobId, cancelled);
+            job.setStatus("RUNNING");
+            job.setLastError(null);
+            save(job);
+            ReplayJobDTO started = job;
+            executor.execute(() -> run(started, cancelled, lease));
+        } catch (RuntimeException e) {
+            runningJobs.remove(jobId, cancelled);
+            releaseLease(lease);
+            throw e;
+        }
+        logger.info("Started replay job {} from {} to stream {} at position {}", jobId,
+            SOURCE_STREAM.equals(job.getSource()) ? job.getSourceStream() : job.getFile(), job.getTargetStream(), job.getPosition());
+        return job;
+    }
+
+    /**
+     * Cancels a replay job running on this instance. The job stops after its current batch and keeps its checkpoint,
+     * so it can be resumed later.
+     *
+     * @param jobId The ID of the job.
+     * @return true if the job was running on this instance.
+     */
+    public boolean cancelJob(String jobId) {
+        AtomicBoolean cancelled = runningJobs.get(jobId);
+        if (cancelled == null) {
+            return false;
+        }
+        cancelled.set(true);
+        return true;
+    }
+
+    /**
+     * Returns the checkpoint of a replay job.
+     *
+     * @param jobId The ID of the job.
+     * @return The job as of its last checkpoint, or null if there is no such job.
+     */
+    public ReplayJobDTO checkpoint(String jobId) {
+        Assert.hasText(jobId, "Job ID must not be empty");
+
+        byte[] json = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hashCommands().hGet(
+            RedisSerializer.string().serialize(CHECKPOINTS_KEY),
+            RedisSerializer.string().serialize(jobId)));
+        return json == null ? null : readJob(json);
+    }
+
+    // Returns the checkpoints of all replay jobs
+    public List<ReplayJobDTO> checkpoints() {
+        Map<byte[], byte[]> stored = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+            connection.hashCommands().hGetAll(RedisSerializer.string().serialize(CHECKPOINTS_KEY)));
+
+        List<ReplayJobDTO> jobs = new ArrayList<>();
+        if (stored != null) {
+            for (byte[] json : stored.values()) {
+                jobs.add(readJob(json));
+            }
+        }
+        return jobs;
+    }
+
+    private ReplayJobDTO newJob(String jobId, ReplayJobDTO request) {
+        Assert.hasText(request.getTargetStream(), "Target stream must not be empty");
+        Assert.isTrue(request.getPayloadType() == null || PAYLOAD_TYPES.containsKey(request.getPayloadType()),
+            "Invalid payload type: " + request.getPayloadType() + ", expected one of " + PAYLOAD_TYPES.keySet());
+
+        ReplayJobDTO job = new ReplayJobDTO();
+        job.setJobId(jobId);
+        job.setSource(request.getSource() == null ? null : request.getSource().toUpperCase());
+        job.setTargetStream(request.getTargetStream());
+        job.setPayloadType(request.getPayloadType());
+        job.setRatePerSecond(request.getRatePerSecond() != null ? request.getRatePerSecond() : ratePerSecond);
+        job.setBatchSize(request.getBatchSize() != null ? request.getBatchSize() : batchSize);
+        job.setStartedAt(Instant.now());
+
+        if (SOURCE_STREAM.equals(job.getSource())) {
+            Assert.hasText(request.getSourceStream(), "Source stream must not be empty");
+            Assert.isTrue(!request.getSourceStream().equals(request.getTargetStream()), "Source and target streams must differ");
+            job.setSourceStream(request.getSourceStream());
+            job.setFromId(request.getFromId());
+
+            // Fix the end of the window, so entries published during the replay are not replayed
+            job.setToId(request.getToId() != null ? request.getToId() : lastEntryId(request.getSourceStream()));
+        } else if (SOURCE_NDJSON.equals(job.getSource())) {
+            Assert.hasText(request.getFile(), "File must not be empty");
+            Assert.notNull(request.getPayloadType(), "Payload type must not be null for an NDJSON source");
+            this.resolve(request.getFile());
+            job.setFile(request.getFile());
+        } else {
+            throw new IllegalArgumentException("Invalid source: " + request.getSource() + ", expected STREAM or NDJSON");
+        }
+        return job;
+    }
+
+    private void run(ReplayJobDTO job, AtomicBoolean cancelled, Lease lease) {
+        boolean leaseLost = false;
+        try {
+            if (SOURCE_STREAM.equals(job.getSource())) {
+                this.replayStream(job, cancelled, lease);
+            } else {
+                this.replayNdjson(job, cancelled, lease);
+            }
+            job.setStatus(cancelled.get() ? "CANCELLED" : "COMPLETED");
+        } catch (InterruptedException e) {
+            job.setStatus("CANCELLED");
+        } catch (LeaseLostException e) {
+            // The run that took over the lease owns the checkpoint now
+            logger.warn("Lost the lease of replay job: {}, stopping without a checkpoint", job.getJobId());
+            leaseLost = true;
+            job.setStatus("CANCELLED");
+        } catch (Exception e) {
+            logger.error("Error running replay job: {}", job.getJobId(), e);
+            job.setStatus("FAILED");
+            job.setLastError(e.getMessage());
+        } finally {
+            if (!leaseLost) {
+                try {
+                    save(job);
+                } catch (Exception e) {
+                    logger.error("Error saving the checkpoint of replay job: {}", job.getJobId(), e);
+                }
+            }
+            runningJobs.remove(job.getJobId());
+            releaseLease(lease);
+            logger.info("Replay job {} {}: read {}, published {}, skipped {}", job.getJobId(), job.getStatus(),
+                job.getRead(), job.getPublished(), job.getSkipped());
+        }
+    }
+
+    private void replayStream(ReplayJobDTO job, AtomicBoolean cancelled, Lease lease) throws InterruptedException {
+        byte[] streamKey = RedisSerializer.string().serialize(job.getSourceStream());
+        int size = this.batchSize(job);
+        Pacer pacer = new Pacer(job, lease);
+        List<Object> batch = new ArrayList<>(size);
+
+        while (!cancelled.get()) {
+            // Continue after the checkpoint, or start at the beginning of the window
+            Range.Bound<String> lower = job.getPosition() != null ? Range.Bound.exclusive(job.getPosition())
+                : job.getFromId() != null ? Range.Bound.inclusive(job.getFromId()) : Range.Bound.unbounded();
+            Range<String> range = Range.of(lower, Range.Bound.inclusive(job.getToId()));
+
+            List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xRange(streamKey, range, Limit.limit().count(size)));
+            if (records == null || records.isEmpty()) {
+                break;
+            }
+
+            for (ByteRecord record : records) {
+                job.setRead(job.getRead() + 1);
+                Object payload = this.decode(job, record);
+                if (payload != null) {
+                    batch.add(payload);
+                } else {
+                    this.skip(job);
+                }
+            }
+
+            this.publishBatch(job, batch, records.get(records.size() - 1).getId().getValue(), pacer, cancelled);
+            if (records.size() < size) {
+                break;
+            }
+        }
+    }
+
+    private void replayNdjson(ReplayJobDTO job, AtomicBoolean cancelled, Lease lease) throws IOException, InterruptedException {
+        Class<?> payloadType = PAYLOAD_TYPES.get(job.getPayloadType());
+        long checkpoint = job.getPosition() == null ? 0 : Long.parseLong(job.getPosition());
+        int size = this.batchSize(job);
+        Pacer pacer = new Pacer(job, lease);
+        List<Object> batch = new ArrayList<>(size);
+
+        // Each NDJSON line is a root-level JSON value, so the parser reads one record at a time
+        // and never buffers the whole file
+        long records = 0;
+        try (InputStream in = Files.newInputStream(this.resolve(job.getFile()));
+                JsonParser parser = payloadMapper.getFactory().createParser(in)) {
+            while (!cancelled.get() && parser.nextToken() != null) {
+                records++;
+
+                // Records up to the checkpoint were published by an earlier run
+                if (records <= checkpoint) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                job.setRead(job.getRead() + 1);
+                try {
+                    batch.add(payloadMapper.readValue(parser, payloadType));
+                } catch (JsonProcessingException e) {
+                    // The parser cannot resynchronize after malformed input, so the job stops after the records read so far
+                    this.publishBatch(job, batch, String.valueOf(records - 1), pacer, cancelled);
+                    throw new IllegalArgumentException("Malformed record " + records + ": " + e.getOriginalMessage(), e);
+                }
+
+                if (batch.size() >= size) {
+                    this.publishBatch(job, batch, String.valueOf(records), pacer, cancelled);
+                }
+            }
+        }
+
+        this.publishBatch(job, batch, String.valueOf(Math.max(records, checkpoint)), pacer, cancelled);
+    }
+
+    // Publishes a batch, checkpoints the job after it and waits as long as needed to keep to the target rate
+    private void publishBatch(ReplayJobDTO job, List<Object> batch, String position, Pacer pacer, AtomicBoolean cancelled)
+            throws InterruptedException {
+        if (!batch.isEmpty()) {
+            messageProducer.produceBatch(job.getTargetStream(), batch);
+            job.setPublished(job.getPublished() + batch.size());
+            meterRegistry.counter("redis.stream.replay.published", "job", job.getJobId()).increment(batch.size());
+            batch.clear();
+        }
+
+        // The lease is renewed before the checkpoint, so a run that lost its lease never overwrites the checkpoint
+        job.setPosition(position);
+        renewLease(pacer.lease);
+        save(job);
+        pacer.await(job.getPublished(), cancelled);
+    }
+
+    private void skip(ReplayJobDTO job) {
+        job.setSkipped(job.getSkipped() + 1);
+        meterRegistry.counter("redis.stream.replay.skipped", "job", job.getJobId()).increment();
+    }
+
+    /**
+     * Converts a source entry back to its payload, or returns null if the entry cannot be replayed
+     * (a canary entry, an unknown payload type, or missing or corrupt chunks).
+     */
+    private Object decode(ReplayJobDTO job, ByteRecord record) {
+        try {
+            Map<String, Object> fields = this.decodeFields(record.getValue());
+
+            Object eventType = fields.get(EventEnvelope.EVENT_TYPE);
+            if (EventEnvelope.CANARY_EVENT_TYPE.equals(eventType)) {
+                return null;
+            }
+
+            String typeName = eventType != null ? String.valueOf(eventType) : job.getPayloadType();
+            Class<?> payloadType = typeName == null ? null : PAYLOAD_TYPES.get(typeName);
+            if (payloadType == null) {
+                job.setLastError("Entry " + record.getId() + ": unknown payload type " + eventType);
+                return null;
+            }
+
+            if (Boolean.TRUE.equals(fields.get(EventEnvelope.CHUNKED))) {
+                fields = this.decodeFields(this.reassemble(fields));
+            }
+
+            fields.keySet().removeAll(NON_PAYLOAD_FIELDS);
+            return payloadMapper.convertValue(fields, payloadType);
+        } catch (IllegalArgumentException e) {
+            job.setLastError("Entry " + record.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the chunks of a pointer entry back from its companion stream (see MessageProducer.chunkIfOversized)
+     * and returns the encoded payload fields they hold.
+     */
+    private Map<byte[], byte[]> reassemble(Map<String, Object> pointer) {
+        String chunkStream = String.valueOf(pointer.get(EventEnvelope.CHUNK_STREAM));
+        String groupId = String.valueOf(pointer.get(EventEnvelope.CHUNK_GROUP_ID));
+        int chunkCount = ((Number) pointer.get(EventEnvelope.CHUNK_COUNT)).intValue();
+        Range<String> range = Range.closed(String.valueOf(pointer.get(EventEnvelope.CHUNK_FIRST_ID)),
+            String.valueOf(pointer.get(EventEnvelope.CHUNK_LAST_ID)));
+
+        // Chunks of other entries published at the same time may be interleaved, so they are matched by group ID
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+            connection.streamCommands().xRange(RedisSerializer.string().serialize(chunkStream), range, Limit.unlimited()));
+
+        byte[][] chunks = new byte[chunkCount][];
+        int totalBytes = 0;
+        for (ByteRecord record : records == null ? List.<ByteRecord>of() : records) {
+            Map<String, Object> chunk = new LinkedHashMap<>();
+            byte[] data = null;
+            for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+                String name = (String) redisTemplate.getHashKeySerializer().deserialize(field.getKey());
+                if (EventEnvelope.CHUNK_DATA.equals(name)) {
+                    data = field.getValue();
+                } else {
+                    chunk.put(name, redisTemplate.getHashValueSerializer().deserialize(field.getValue()));
+                }
+            }
+
+            int index = chunk.get(EventEnvelope.CHUNK_INDEX) instanceof Number number ? number.intValue() : -1;
+            if (groupId.equals(String.valueOf(chunk.get(EventEnvelope.CHUNK_GROUP_ID))) && index >= 0 && index < chunkCount
+                    && data != null && chunks[index] == null) {
+                chunks[index] = data;
+                totalBytes += data.length;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(totalBytes);
+        for (int index = 0; index < chunkCount; index++) {
+            if (chunks[index] == null) {
+                throw new IllegalArgumentException("Chunk " + index + " of " + groupId + " is missing from " + chunkStream);
+            }
+            buffer.put(chunks[index]);
+        }
+        byte[] bytes = buffer.array();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (!Long.toHexString(crc.getValue()).equals(String.valueOf(pointer.get(EventEnvelope.CHUNK_CHECKSUM)))) {
+            throw new IllegalArgumentException("Checksum mismatch for the chunks of " + groupId);
+        }
+
+        // Each field name and value is prefixed by its length
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        while (data.hasRemaining()) {
+            byte[] name = new byte[data.getInt()];
+            data.get(name);
+            byte[] value = new byte[data.getInt()];
+            data.get(value);
+            fields.put(name, value);
+        }
+        return fields;
+    }
+
+    // Decodes the fields of an entry with the hash key/value serializers they were encoded with
+    private Map<String, Object> decodeFields(Map<byte[], byte[]> entry) {
+        Map<String, Object> fields = new LinkedHashMap<>(entry.size());
+        for (Map.Entry<byte[], byte[]> field : entry.entrySet()) {
+            fields.put((String) redisTemplate.getHashKeySerializer().deserialize(field.getKey()),
+                redisTemplate.getHashValueSerializer().deserialize(field.getValue()));
+        }
+        return fields;
+    }
+
+    // ID of the last entry of a stream, or "0-0" if the stream is empty
+    private String lastEntryId(String streamName) {
+        List<ByteRecord> last = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+            connection.streamCommands().xRevRange(RedisSerializer.string().serialize(streamName), Range.unbounded(),
+                Limit.limit().count(1)));
+        return last == null || last.isEmpty() ? "0-0" : last.get(0).getId().getValue();
+    }
+
+    // Resolves a file of the replay directory; paths leaving the directory are rejected
+    private Path resolve(String file) {
+        Path base = Paths.get(directory).toAbsolutePath().normalize();
+        Path path = base.resolve(file).normalize();
+        Assert.isTrue(path.startsWith(base), "File must be inside the replay directory: " + file);
+        Assert.isTrue(Files.isRegularFile(path), "File not found: " + file);
+        return path;
+    }
+
+    // Batches are capped to a tenth of the rate, so a paced job publishes about ten batches per second
+    private int batchSize(ReplayJobDTO job) {
+        if (job.getRatePerSecond() <= 0) {
+            return job.getBatchSize();
+        }
+        return (int) Math.max(1, Math.min(job.getBatchSize(), job.getRatePerSecond() / 10));
+    }
+
+    private void save(ReplayJobDTO job) {
+        job.setUpdatedAt(Instant.now());
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(job);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.hashCommands().hSet(
+                RedisSerializer.string().serialize(CHECKPOINTS_KEY),
+                RedisSerializer.string().serialize(job.getJobId()),
+                json));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to checkpoint replay job: " + job.getJobId(), e);
+        }
+    }
+
+    private ReplayJobDTO readJob(byte[] json) {
+        try {
+            return objectMapper.readValue(json, ReplayJobDTO.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Invalid checkpoint in " + CHECKPOINTS_KEY, e);
+        }
+    }
+
+    private boolean acquireLease(Lease lease) {
+        Boolean acquired = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands().set(
+            RedisSerializer.string().serialize(LEASE_KEY_PREFIX + lease.jobId()),
+            RedisSerializer.string().serialize(lease.owner()),
+            Expiration.milliseconds(leaseMs),
+            SetOption.SET_IF_ABSENT));
+        return Boolean.TRUE.equals(acquired);
+    }
+
+    // Extends the lease of the run; throws LeaseLostException if the lease expired and another run took it over
+    private void renewLease(Lease lease) {
+        Long renewed = redisTemplate.execute(replayLeaseRenewScript,
+            RedisSerializer.string(),
+            new GenericToStringSerializer<>(Long.class),
+            List.of(LEASE_KEY_PREFIX + lease.jobId()),
+            lease.owner(),
+            String.valueOf(leaseMs));
+        if (renewed == null || renewed == 0) {
+            throw new LeaseLostException(lease.jobId());
+        }
+    }
+
+    private void releaseLease(Lease lease) {
+        try {
+            redisTemplate.execute(replayLeaseReleaseScript,
+                RedisSerializer.string(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(LEASE_KEY_PREFIX + lease.jobId()),
+                lease.owner());
+        } catch (Exception e) {
+            logger.error("Error releasing the lease of replay job: {}; it expires in {} ms", lease.jobId(), leaseMs, e);
+        }
+    }
+
+    // Keeps a job to its target rate, measured from the start of the current run
+    private final class Pacer {
+        private final ReplayJobDTO job;
+        private final Lease lease;
+        private final long startNanos = System.nanoTime();
+        private final long publishedAtStart;
+
+        private Pacer(ReplayJobDTO job, Lease lease) {
+            this.job = job;
+            this.lease = lease;
+            this.publishedAtStart = job.getPublished();
+        }
+
+        // Sleeps until the published records are due; the lease is renewed and cancellation checked while waiting
+        private void await(long published, AtomicBoolean cancelled) throws InterruptedException {
+            if (job.getRatePerSecond() <= 0) {
+                return;
+            }
+
+            long dueNanos = startNanos + (long) ((published - publishedAtStart) / job.getRatePerSecond() * 1_000_000_000d);
+            long waitNanos;
+            while (!cancelled.get() && (waitNanos = dueNanos - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(leaseMs / 3)));
+                renewLease(lease);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, maxJobs), runnable -> {
+            Thread thread = new Thread(runnable, "stream-replayer-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor == null) {
+            return;
+        }
+
+        // Running jobs stop after their current batch and can be resumed from their checkpoint
+        runningJobs.values().forEach(cancelled -> cancelled.set(true));
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
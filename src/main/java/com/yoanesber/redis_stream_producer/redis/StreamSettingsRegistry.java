@@ -0,0 +1,342 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.dto.StreamSettingsDTO;
+
+/**
+ * StreamSettingsRegistry holds the producer settings of every stream (retention, batching, log sampling,
+ * concurrency limit and chunking, see StreamSettingsDTO) and lets them be changed at runtime without a restart.
+ *
+ * The effective settings of a stream are the defaults from the application properties, overridden by the
+ * fields stored for the stream in the Redis hash "PRODUCER_CONFIG:streams" (field: stream name, value:
+ * JSON of the overridden settings). The hash is the shared config source of all producer instances:
+ * updates made through the "streamsettings" actuator endpoint are written to it and applied locally at once,
+ * and every instance reloads it periodically to pick up changes made elsewhere.
+ *
+ * Settings are applied atomically: each stream has one immutable Snapshot (settings, concurrency limiter
+ * and log sampler) that is replaced as a whole, so a publish never mixes an old and a new value.
+ * The settings held by a Snapshot are only read by MessageProducer; the public accessors return copies,
+ * so callers (e.g. the actuator endpoint) cannot modify the settings in use.
+ */
+
+@Component
+public class StreamSettingsRegistry implements SmartLifecycle {
+    // Defaults of every stream without overrides
+    @Value("${redis.stream.settings.maxlen:3}")
+    private long defaultMaxlen;
+
+    @Value("${redis.stream.settings.approximate-trimming:true}")
+    private boolean defaultApproximateTrimming;
+
+    @Value("${redis.stream.settings.pipeline-batch-size:1000}")
+    private int defaultPipelineBatchSize;
+
+    @Value("${redis.stream.settings.log-sample-rate:1}")
+    private int defaultLogSampleRate;
+
+    @Value("${redis.stream.settings.max-in-flight:0}")
+    private int defaultMaxInFlight;
+
+    @Value("${redis.stream.settings.chunk-threshold-bytes:65536}")
+    private int defaultChunkThresholdBytes;
+
+    @Value("${redis.stream.settings.chunk-size-bytes:16384}")
+    private int defaultChunkSizeBytes;
+
+    // refreshMs: Delay between two reloads of the overrides from Redis; 0 loads them only at startup
+    // acquireTimeoutMs: How long a publish waits for a slot when the stream is at its concurrency limit
+    @Value("${redis.stream.settings.refresh-ms:5000}")
+    private long refreshMs;
+
+    @Value("${redis.stream.settings.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMs;
+
+    public static final String SETTINGS_KEY = "PRODUCER_CONFIG:streams";
+
+    // Overrides as last loaded from (or written to) Redis, and the resulting snapshots, keyed by stream name
+    private final Map<String, StreamSettingsDTO> overrides = new ConcurrentHashMap<>();
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private volatile Snapshot defaults;
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * The effective settings of a stream, together with the state derived from them.
+     * A Snapshot is never modified; changing the settings replaces it.
+     */
+    public final class Snapshot {
+        private final StreamSettingsDTO settings;
+        private final Semaphore limiter; // null when the concurrency is unlimited
+        private final AtomicLong publishes = new AtomicLong();
+
+        private Snapshot(StreamSettingsDTO settings) {
+            this.settings = settings;
+            this.limiter = settings.getMaxInFlight() > 0 ? new Semaphore(settings.getMaxInFlight()) : null;
+        }
+
+        // The settings in use; never modified, so they are not handed out beyond this package
+        StreamSettingsDTO settings() {
+            return settings;
+        }
+
+        /**
+         * Takes a publish slot, waiting up to the acquire timeout when the stream is at its concurrency limit.
+         * Every successful call must be paired with release() on the same Snapshot.
+         */
+        public void acquire(String streamName) {
+            if (limiter == null) {
+                return;
+            }
+
+            try {
+                if (!limiter.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new RuntimeException("Too many concurrent publishes to stream: " + streamName);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to publish to stream: " + streamName, e);
+            }
+        }
+
+        public void release() {
+            if (limiter != null) {
+                limiter.release();
+            }
+        }
+
+        // Returns true for one in every logSampleRate publishes
+        public boolean shouldLog() {
+            return publishes.getAndIncrement() % settings.getLogSampleRate() == 0;
+        }
+    }
+
+    public StreamSettingsRegistry(RedisTemplate<String, Object> redisTemplate, ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns the current snapshot of the settings of a stream.
+     *
+     * @param streamName The name of the Redis stream.
+     * @return The snapshot; streams without overrides share the defaults.
+     */
+    public Snapshot snapshot(String streamName) {
+        Snapshot snapshot = snapshots.get(streamName);
+        return snapshot != null ? snapshot : defaults();
+    }
+
+    // Returns a copy of the effective settings of a stream
+    public StreamSettingsDTO settings(String streamName) {
+        return copy(snapshot(streamName).settings());
+    }
+
+    // Returns a copy of the effective settings of every stream with overrides (the others use defaultSettings())
+    public Map<String, StreamSettingsDTO> effectiveSettings() {
+        Map<String, StreamSettingsDTO> result = new HashMap<>();
+        snapshots.forEach((streamName, snapshot) -> result.put(streamName, copy(snapshot.settings())));
+        return result;
+    }
+
+    public StreamSettingsDTO defaultSettings() {
+        return copy(defaults().settings());
+    }
+
+    // Returns a copy of the overrides of a stream, or null if it has none
+    public StreamSettingsDTO overrides(String streamName) {
+        StreamSettingsDTO streamOverrides = overrides.get(streamName);
+        return streamOverrides == null ? null : copy(streamOverrides);
+    }
+
+    /**
+     * Overrides settings of a stream. Fields left null keep their current override (or default).
+     * The merged overrides are written to Redis and applied to this instance immediately.
+     *
+     * @param streamName The name of the Redis stream.
+     * @param changes    The settings to override.
+     * @return The new effective settings of the stream.
+     */
+    public synchronized StreamSettingsDTO update(String streamName, StreamSettingsDTO changes) {
+        Assert.hasText(streamName, "Stream name must not be empty");
+        Assert.notNull(changes, "Settings must not be null");
+
+        StreamSettingsDTO current = overrides.getOrDefault(streamName, new StreamSettingsDTO());
+        StreamSettingsDTO merged = merge(current, changes);
+        validate(merge(defaultSettings(), merged));
+
+        try {
+            String json = objectMapper.writeValueAsString(merged);
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.hashCommands().hSet(
+                RedisSerializer.string().serialize(SETTINGS_KEY),
+                RedisSerializer.string().serialize(streamName),
+                RedisSerializer.string().serialize(json)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid settings for stream: " + streamName, e);
+        }
+
+        apply(streamName, merged);
+        logger.info("Updated settings of stream {}: {}", streamName, settings(streamName));
+        return settings(streamName);
+    }
+
+    /**
+     * Removes the overrides of a stream, so it uses the default settings again.
+     *
+     * @param streamName The name of the Redis stream.
+     */
+    public synchronized void reset(String streamName) {
+        Assert.hasText(streamName, "Stream name must not be empty");
+
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.hashCommands().hDel(
+            RedisSerializer.string().serialize(SETTINGS_KEY),
+            RedisSerializer.string().serialize(streamName)));
+
+        apply(streamName, null);
+        logger.info("Reset settings of stream {} to the defaults", streamName);
+    }
+
+    // Reloads the overrides from Redis and applies those that changed
+    synchronized void reload() {
+        Map<byte[], byte[]> stored = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+            connection.hashCommands().hGetAll(RedisSerializer.string().serialize(SETTINGS_KEY)));
+
+        Map<String, StreamSettingsDTO> loaded = new HashMap<>();
+        if (stored != null) {
+            for (Map.Entry<byte[], byte[]> field : stored.entrySet()) {
+                String streamName = RedisSerializer.string().deserialize(field.getKey());
+                try {
+                    StreamSettingsDTO streamOverrides = objectMapper.readValue(field.getValue(), StreamSettingsDTO.class);
+                    validate(merge(defaultSettings(), streamOverrides));
+                    loaded.put(streamName, streamOverrides);
+                } catch (Exception e) {
+                    // Keep the settings in use rather than applying a broken override
+                    logger.error("Ignoring invalid settings of stream {} in {}", streamName, SETTINGS_KEY, e);
+                    if (overrides.containsKey(streamName)) {
+                        loaded.put(streamName, overrides.get(streamName));
+                    }
+                }
+            }
+        }
+
+        for (String streamName : overrides.keySet()) {
+            if (!loaded.containsKey(streamName)) {
+                apply(streamName, null);
+                logger.info("Settings of stream {} were reset to the defaults", streamName);
+            }
+        }
+        loaded.forEach((streamName, streamOverrides) -> {
+            if (!streamOverrides.equals(overrides.get(streamName))) {
+                apply(streamName, streamOverrides);
+                logger.info("Applied settings of stream {}: {}", streamName, settings(streamName));
+            }
+        });
+    }
+
+    // Replaces the snapshot of a stream; null overrides make it use the defaults
+    private void apply(String streamName, StreamSettingsDTO streamOverrides) {
+        if (streamOverrides == null) {
+            overrides.remove(streamName);
+            snapshots.remove(streamName);
+            return;
+        }
+
+        overrides.put(streamName, streamOverrides);
+        snapshots.put(streamName, new Snapshot(merge(defaultSettings(), streamOverrides)));
+    }
+
+    private Snapshot defaults() {
+        Snapshot snapshot = defaults;
+        if (snapshot == null) {
+            snapshot = new Snapshot(new StreamSettingsDTO(defaultMaxlen, defaultApproximateTrimming,
+                defaultPipelineBatchSize, defaultLogSampleRate, defaultMaxInFlight, defaultChunkThresholdBytes, defaultChunkSizeBytes));
+            validate(snapshot.settings());
+            defaults = snapshot;
+        }
+        return snapshot;
+    }
+
+    // Returns a copy of base with the non-null fields of changes applied
+    private StreamSettingsDTO merge(StreamSettingsDTO base, StreamSettingsDTO changes) {
+        return new StreamSettingsDTO(
+            changes.getMaxlen() != null ? changes.getMaxlen() : base.getMaxlen(),
+            changes.getApproximateTrimming() != null ? changes.getApproximateTrimming() : base.getApproximateTrimming(),
+            changes.getPipelineBatchSize() != null ? changes.getPipelineBatchSize() : base.getPipelineBatchSize(),
+            changes.getLogSampleRate() != null ? changes.getLogSampleRate() : base.getLogSampleRate(),
+            changes.getMaxInFlight() != null ? changes.getMaxInFlight() : base.getMaxInFlight(),
+            changes.getChunkThresholdBytes() != null ? changes.getChunkThresholdBytes() : base.getChunkThresholdBytes(),
+            changes.getChunkSizeBytes() != null ? changes.getChunkSizeBytes() : base.getChunkSizeBytes());
+    }
+
+    private StreamSettingsDTO copy(StreamSettingsDTO settings) {
+        return merge(settings, new StreamSettingsDTO());
+    }
+
+    private void validate(StreamSettingsDTO settings) {
+        Assert.isTrue(settings.getMaxlen() > 0, "Maxlen must be greater than zero");
+        Assert.isTrue(settings.getPipelineBatchSize() > 0, "Pipeline batch size must be greater than zero");
+        Assert.isTrue(settings.getLogSampleRate() > 0, "Log sample rate must be greater than zero");
+        Assert.isTrue(settings.getMaxInFlight() >= 0, "Max in-flight must not be negative");
+        Assert.isTrue(settings.getChunkThresholdBytes() >= 0, "Chunk threshold must not be negative");
+        Assert.isTrue(settings.getChunkSizeBytes() > 0, "Chunk size must be greater than zero");
+    }
+
+    private void refresh() {
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.error("Error reloading the stream settings from {}", SETTINGS_KEY, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        // Load the overrides before the first publish; Redis being down must not prevent the start
+        refresh();
+
+        if (refreshMs > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stream-settings-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
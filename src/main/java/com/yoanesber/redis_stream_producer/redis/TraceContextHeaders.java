@@ -0,0 +1,101 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+/**
+ * TraceContextHeaders encodes the current trace context as W3C Trace Context fields ("traceparent" and,
+ * when present, "tracestate") of a stream entry, so consumers can continue the trace of the request
+ * that published the event.
+ *
+ * The fields are encoded once per span and cached on the publishing thread: every entry published under
+ * the same span (e.g. all the batches of an NDJSON import) reuses the encoded bytes, so propagation costs
+ * a single equality check per entry and can be left on at 100% sampling.
+ *
+ * If tracing is disabled or no span is active, no fields are written.
+ */
+
+@Component
+public class TraceContextHeaders {
+    // enabled: Set to false to stop writing trace context fields to stream entries
+    @Value("${redis.stream.trace.enabled:true}")
+    private boolean enabled;
+
+    private final ObjectProvider<Tracer> tracerProvider;
+    private final ObjectProvider<Propagator> propagatorProvider;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    // Encoded fields of the last span seen by each thread
+    private final ThreadLocal<CachedHeaders> cachedHeaders = new ThreadLocal<>();
+
+    private record CachedHeaders(TraceContext context, Map<byte[], byte[]> headers) {
+    }
+
+    public TraceContextHeaders(ObjectProvider<Tracer> tracerProvider, ObjectProvider<Propagator> propagatorProvider,
+            RedisTemplate<String, Object> redisTemplate) {
+        this.tracerProvider = tracerProvider;
+        this.propagatorProvider = propagatorProvider;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Returns the encoded trace context fields of the current span.
+     *
+     * @return The encoded fields, or an empty map if there is no current span.
+     */
+    public Map<byte[], byte[]> current() {
+        if (!enabled) {
+            return Map.of();
+        }
+
+        Tracer tracer = tracerProvider.getIfAvailable();
+        Propagator propagator = propagatorProvider.getIfAvailable();
+        if (tracer == null || propagator == null) {
+            return Map.of();
+        }
+
+        TraceContext context = tracer.currentTraceContext().context();
+        if (context == null) {
+            return Map.of();
+        }
+
+        CachedHeaders cached = cachedHeaders.get();
+        if (cached != null && cached.context().equals(context)) {
+            return cached.headers();
+        }
+
+        Map<byte[], byte[]> headers = encode(propagator, context);
+        cachedHeaders.set(new CachedHeaders(context, headers));
+        return headers;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<byte[], byte[]> encode(Propagator propagator, TraceContext context) {
+        Map<String, String> fields = new LinkedHashMap<>(2);
+        propagator.inject(context, fields, (carrier, key, value) -> {
+            // Only the W3C fields are written; other propagation formats (e.g. baggage) are left out
+            if (EventEnvelope.TRACEPARENT.equals(key) || EventEnvelope.TRACESTATE.equals(key)) {
+                carrier.put(key, value);
+            }
+        });
+
+        // Encoded with the hash key/value serializers, like every other field of the entry
+        RedisSerializer<Object> hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+
+        Map<byte[], byte[]> headers = new LinkedHashMap<>(fields.size());
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            headers.put(hashKeySerializer.serialize(field.getKey()), hashValueSerializer.serialize(field.getValue()));
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+}
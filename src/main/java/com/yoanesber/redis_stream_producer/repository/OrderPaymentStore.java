@@ -0,0 +1,490 @@
+package com.yoanesber.redis_stream_producer.repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+
+/**
+ * OrderPaymentStore is an embedded, in-memory store of OrderPayment entities, so payments can be looked up
+ * without a Redis round trip (or a scan of the stream).
+ *
+ * Payments are kept column by column in a ring of slots addressed by their primary key (id), so memory use is
+ * bounded by the configured capacity: once the ring is full, saving a payment evicts the oldest one from every
+ * index. The columns start small and double as payments are saved, up to the capacity, so an idle store holds
+ * only a few kilobytes. Times are kept as epoch nanoseconds in primitive columns, and the repeated values of
+ * the currency, payment method and status columns share one String instance each.
+ *
+ * The store keeps a copy of the payment: saving it again after a change stores a new payment, and every lookup
+ * returns a new OrderPayment built from the columns. The card CVV is never stored, and the card number only
+ * with all but its last four digits masked.
+ *
+ * Indexes (all on primitive arrays of ids, without boxing):
+ * - id: the slot is (id - 1) % capacity, O(1)
+ * - orderId and transactionId: open addressing hash tables of the id of the latest payment, O(1);
+ *   the keys are read from the columns, so the tables hold 8 bytes per entry
+ * - createdAt: ids sorted by creation time for range queries, O(log n + k); payments are usually saved in
+ *   creation order, so inserting and evicting are O(1) at the ends of the sorted run
+ *
+ * Reads share a read lock and never block each other; writes take the write lock.
+ */
+
+@Repository
+public class OrderPaymentStore {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int MAX_DICTIONARY_SIZE = 1024;
+
+    private final int capacity;
+
+    // Columns, indexed by slot
+    private String[] orderIds;
+    private BigDecimal[] amounts;
+    private String[] currencies;
+    private String[] paymentMethods;
+    private String[] paymentStatuses;
+    private String[] maskedCardNumbers;
+    private String[] cardExpiries;
+    private String[] paypalEmails;
+    private String[] bankAccounts;
+    private String[] bankNames;
+    private String[] transactionIds;
+    private int[] retryCounts;
+    private long[] createdAtNanos;
+    private long[] updatedAtNanos;
+
+    private final IdIndex orderIdIndex = new IdIndex(id -> orderIds[slot(id)]);
+    private final IdIndex transactionIdIndex = new IdIndex(id -> transactionIds[slot(id)]);
+    private final CreatedAtIndex createdAtIndex = new CreatedAtIndex();
+
+    // Shared instances of the low-cardinality values (currency, payment method, status)
+    private final Map<String, String> dictionary = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long lastId;
+
+    public OrderPaymentStore(@Value("${order-payment.store.capacity:100000}") int capacity) {
+        Assert.isTrue(capacity > 0, "Capacity must be greater than zero");
+        this.capacity = capacity;
+        this.allocate(Math.min(capacity, INITIAL_SLOTS));
+    }
+
+    /**
+     * Saves an OrderPayment, assigning it a new id.
+     *
+     * @param orderPayment The OrderPayment to save.
+     * @return The saved OrderPayment, with its id set.
+     */
+    public OrderPayment save(OrderPayment orderPayment) {
+        Assert.notNull(orderPayment, "OrderPayment must not be null");
+        Assert.notNull(orderPayment.getCreatedAt(), "Created at must not be null");
+
+        lock.writeLock().lock();
+        try {
+            long id = ++lastId;
+            int slot = slot(id);
+
+            if (slot >= orderIds.length) {
+                allocate((int) Math.min(capacity, 2L * orderIds.length));
+            } else if (id > capacity) {
+                // Evict the payment previously held by the slot from every index, while its columns still hold it
+                unindex(id - capacity, slot);
+            }
+
+            orderIds[slot] = orderPayment.getOrderId();
+            amounts[slot] = orderPayment.getAmount();
+            currencies[slot] = canonical(orderPayment.getCurrency());
+            paymentMethods[slot] = canonical(orderPayment.getPaymentMethod());
+            paymentStatuses[slot] = canonical(orderPayment.getPaymentStatus());
+            maskedCardNumbers[slot] = mask(orderPayment.getCardNumber());
+            cardExpiries[slot] = orderPayment.getCardExpiry();
+            paypalEmails[slot] = orderPayment.getPaypalEmail();
+            bankAccounts[slot] = orderPayment.getBankAccount();
+            bankNames[slot] = orderPayment.getBankName();
+            transactionIds[slot] = orderPayment.getTransactionId();
+            retryCounts[slot] = orderPayment.getRetryCount();
+            createdAtNanos[slot] = epochNanos(orderPayment.getCreatedAt());
+            updatedAtNanos[slot] = orderPayment.getUpdatedAt() == null ? Long.MIN_VALUE : epochNanos(orderPayment.getUpdatedAt());
+
+            if (orderPayment.getOrderId() != null) {
+                orderIdIndex.put(orderPayment.getOrderId(), id);
+            }
+            if (orderPayment.getTransactionId() != null && !orderPayment.getTransactionId().isEmpty()) {
+                transactionIdIndex.put(orderPayment.getTransactionId(), id);
+            }
+            createdAtIndex.add(createdAtNanos[slot], id);
+
+            orderPayment.setId(id);
+            return orderPayment;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public OrderPayment findById(long id) {
+        lock.readLock().lock();
+        try {
+            return get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Returns the latest payment of the order
+    public OrderPayment findByOrderId(String orderId) {
+        lock.readLock().lock();
+        try {
+            return get(orderIdIndex.get(orderId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public OrderPayment findByTransactionId(String transactionId) {
+        lock.readLock().lock();
+        try {
+            return get(transactionIdIndex.get(transactionId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the payments created in the given time range, oldest first.
+     *
+     * @param from  Start of the range (inclusive).
+     * @param to    End of the range (exclusive).
+     * @param limit Maximum number of payments to return.
+     * @return The payments created in the range.
+     */
+    public List<OrderPayment> findByCreatedAtBetween(Instant from, Instant to, int limit) {
+        Assert.notNull(from, "From must not be null");
+        Assert.notNull(to, "To must not be null");
+        Assert.isTrue(limit > 0, "Limit must be greater than zero");
+
+        lock.readLock().lock();
+        try {
+            List<OrderPayment> result = new ArrayList<>(Math.min(limit, 256));
+            createdAtIndex.forEachBetween(epochNanos(from), epochNanos(to), id -> {
+                result.add(get(id));
+                return result.size() < limit;
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return Math.min(lastId, capacity);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Returns a copy of the payment with the given id, or null if it was never saved or has been evicted
+    private OrderPayment get(long id) {
+        if (id <= 0 || id > lastId || id <= lastId - capacity) {
+            return null;
+        }
+
+        int slot = slot(id);
+        OrderPayment orderPayment = new OrderPayment();
+        orderPayment.setId(id);
+        orderPayment.setOrderId(orderIds[slot]);
+        orderPayment.setAmount(amounts[slot]);
+        orderPayment.setCurrency(currencies[slot]);
+        orderPayment.setPaymentMethod(paymentMethods[slot]);
+        orderPayment.setPaymentStatus(paymentStatuses[slot]);
+        orderPayment.setCardNumber(maskedCardNumbers[slot]);
+        orderPayment.setCardExpiry(cardExpiries[slot]);
+        orderPayment.setPaypalEmail(paypalEmails[slot]);
+        orderPayment.setBankAccount(bankAccounts[slot]);
+        orderPayment.setBankName(bankNames[slot]);
+        orderPayment.setTransactionId(transactionIds[slot]);
+        orderPayment.setRetryCount(retryCounts[slot]);
+        orderPayment.setCreatedAt(instant(createdAtNanos[slot]));
+        orderPayment.setUpdatedAt(updatedAtNanos[slot] == Long.MIN_VALUE ? null : instant(updatedAtNanos[slot]));
+        return orderPayment;
+    }
+
+    private int slot(long id) {
+        return (int) ((id - 1) % capacity);
+    }
+
+    private void unindex(long id, int slot) {
+        if (orderIds[slot] != null) {
+            orderIdIndex.remove(orderIds[slot], id);
+        }
+        if (transactionIds[slot] != null && !transactionIds[slot].isEmpty()) {
+            transactionIdIndex.remove(transactionIds[slot], id);
+        }
+        createdAtIndex.remove(createdAtNanos[slot], id);
+    }
+
+    // Grows every column to the given number of slots; the ring only wraps once the columns reach the capacity
+    private void allocate(int slots) {
+        orderIds = orderIds == null ? new String[slots] : Arrays.copyOf(orderIds, slots);
+        amounts = amounts == null ? new BigDecimal[slots] : Arrays.copyOf(amounts, slots);
+        currencies = currencies == null ? new String[slots] : Arrays.copyOf(currencies, slots);
+        paymentMethods = paymentMethods == null ? new String[slots] : Arrays.copyOf(paymentMethods, slots);
+        paymentStatuses = paymentStatuses == null ? new String[slots] : Arrays.copyOf(paymentStatuses, slots);
+        maskedCardNumbers = maskedCardNumbers == null ? new String[slots] : Arrays.copyOf(maskedCardNumbers, slots);
+        cardExpiries = cardExpiries == null ? new String[slots] : Arrays.copyOf(cardExpiries, slots);
+        paypalEmails = paypalEmails == null ? new String[slots] : Arrays.copyOf(paypalEmails, slots);
+        bankAccounts = bankAccounts == null ? new String[slots] : Arrays.copyOf(bankAccounts, slots);
+        bankNames = bankNames == null ? new String[slots] : Arrays.copyOf(bankNames, slots);
+        transactionIds = transactionIds == null ? new String[slots] : Arrays.copyOf(transactionIds, slots);
+        retryCounts = retryCounts == null ? new int[slots] : Arrays.copyOf(retryCounts, slots);
+        createdAtNanos = createdAtNanos == null ? new long[slots] : Arrays.copyOf(createdAtNanos, slots);
+        updatedAtNanos = updatedAtNanos == null ? new long[slots] : Arrays.copyOf(updatedAtNanos, slots);
+    }
+
+    // Returns the shared instance of a low-cardinality value; unexpected values stop being shared once the dictionary is full
+    private String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = dictionary.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+            dictionary.put(value, value);
+        }
+        return value;
+    }
+
+    // Keeps the last four digits of a card number only, e.g. ************3456
+    private static String mask(String cardNumber) {
+        if (cardNumber == null) {
+            return null;
+        }
+        String digits = cardNumber.replaceAll("\\D", "");
+        int visible = Math.min(4, digits.length());
+        return "*".repeat(digits.length() - visible) + digits.substring(digits.length() - visible);
+    }
+
+    // Epoch nanoseconds, saturated outside of the years 1677 to 2262
+    private static long epochNanos(Instant instant) {
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+        } catch (ArithmeticException e) {
+            return instant.getEpochSecond() < 0 ? Long.MIN_VALUE + 1 : Long.MAX_VALUE;
+        }
+    }
+
+    private static Instant instant(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L), Math.floorMod(epochNanos, 1_000_000_000L));
+    }
+
+    /**
+     * Hash index from a key to the id of the latest payment with that key, with open addressing and linear probing.
+     * Only the ids are stored; the key of an id is read from its column, which must hold it while the id is indexed.
+     */
+    private static final class IdIndex {
+        private final LongFunction<String> keyOf;
+        private long[] table = new long[16]; // 0 marks an empty bucket, ids start at 1
+        private int size;
+
+        IdIndex(LongFunction<String> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        long get(String key) {
+            if (key == null) {
+                return 0;
+            }
+            int bucket = find(key);
+            return bucket < 0 ? 0 : table[bucket];
+        }
+
+        // Maps the key to the id, replacing the id it was mapped to
+        void put(String key, long id) {
+            int bucket = find(key);
+            if (bucket >= 0) {
+                table[bucket] = id;
+                return;
+            }
+
+            if (4 * (size + 1) > 3 * table.length) {
+                resize(table.length * 2);
+            }
+            insert(table, key, id);
+            size++;
+        }
+
+        // Removes the key, if it is still mapped to the given id
+        void remove(String key, long id) {
+            int bucket = find(key);
+            if (bucket < 0 || table[bucket] != id) {
+                return;
+            }
+
+            // Backward shift deletion: move later entries of the probe sequence into the hole,
+            // unless their home bucket lies cyclically after the hole
+            int mask = table.length - 1;
+            int hole = bucket;
+            for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+                int home = home(keyOf.apply(table[next]), mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    table[hole] = table[next];
+                    hole = next;
+                }
+            }
+            table[hole] = 0;
+            size--;
+        }
+
+        private int find(String key) {
+            int mask = table.length - 1;
+            for (int bucket = home(key, mask); table[bucket] != 0; bucket = (bucket + 1) & mask) {
+                if (key.equals(keyOf.apply(table[bucket]))) {
+                    return bucket;
+                }
+            }
+            return -1;
+        }
+
+        private void resize(int length) {
+            long[] resized = new long[length];
+            for (long id : table) {
+                if (id != 0) {
+                    insert(resized, keyOf.apply(id), id);
+                }
+            }
+            table = resized;
+        }
+
+        private static void insert(long[] table, String key, long id) {
+            int mask = table.length - 1;
+            int bucket = home(key, mask);
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = id;
+        }
+
+        private static int home(String key, int mask) {
+            int hash = key.hashCode();
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * Ids sorted by creation time (and by id for equal times), in two parallel primitive arrays.
+     * The sorted run starts at head, so evicting the oldest payment advances head instead of shifting the run.
+     */
+    private static final class CreatedAtIndex {
+        private long[] times = new long[16];
+        private long[] ids = new long[16];
+        private int head;
+        private int size;
+
+        @FunctionalInterface
+        interface IdVisitor {
+            // Returns false to stop the iteration
+            boolean visit(long id);
+        }
+
+        void add(long time, long id) {
+            if (head + size == times.length) {
+                makeRoom();
+            }
+
+            // Ids grow, so the new entry goes after every entry with the same time
+            int position = upperBound(time);
+            int tail = head + size;
+            if (position < tail) {
+                System.arraycopy(times, position, times, position + 1, tail - position);
+                System.arraycopy(ids, position, ids, position + 1, tail - position);
+            }
+            times[position] = time;
+            ids[position] = id;
+            size++;
+        }
+
+        void remove(long time, long id) {
+            int tail = head + size;
+            int position = lowerBound(time);
+            while (position < tail && times[position] == time && ids[position] != id) {
+                position++;
+            }
+            if (position == tail || times[position] != time) {
+                return;
+            }
+
+            if (position == head) {
+                head++;
+            } else {
+                System.arraycopy(times, position + 1, times, position, tail - position - 1);
+                System.arraycopy(ids, position + 1, ids, position, tail - position - 1);
+            }
+            size--;
+        }
+
+        // Visits the ids created in [from, to), oldest first
+        void forEachBetween(long from, long to, IdVisitor visitor) {
+            int tail = head + size;
+            for (int position = lowerBound(from); position < tail && times[position] < to; position++) {
+                if (!visitor.visit(ids[position])) {
+                    return;
+                }
+            }
+        }
+
+        // Moves the run back to the start of the arrays, or doubles them once the run fills more than half
+        private void makeRoom() {
+            int length = size * 2 > times.length ? times.length * 2 : times.length;
+            long[] movedTimes = length == times.length ? times : new long[length];
+            long[] movedIds = length == ids.length ? ids : new long[length];
+            System.arraycopy(times, head, movedTimes, 0, size);
+            System.arraycopy(ids, head, movedIds, 0, size);
+            times = movedTimes;
+            ids = movedIds;
+            head = 0;
+        }
+
+        // First position whose time is >= the given time
+        private int lowerBound(long time) {
+            int low = head;
+            int high = head + size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // First position whose time is > the given time
+        private int upperBound(long time) {
+            int low = head;
+            int high = head + size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] <= time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
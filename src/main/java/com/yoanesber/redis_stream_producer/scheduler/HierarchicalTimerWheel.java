@@ -0,0 +1,201 @@
+package com.yoanesber.redis_stream_producer.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * HierarchicalTimerWheel schedules a very large number of delayed tasks at O(1) cost per task.
+ *
+ * Time is divided into ticks of tickMillis. The wheel has several levels of 2^wheelBits slots each:
+ * level 0 covers the next 2^wheelBits ticks with one slot per tick, level 1 covers 2^(2*wheelBits) ticks
+ * with one slot per 2^wheelBits ticks, and so on. A task is placed in the lowest level whose range covers
+ * its deadline; when the lower levels complete a rotation, the matching slot of the level above is
+ * cascaded down. Scheduling and expiring a task are therefore constant-time, independent of the number
+ * of pending tasks, unlike a priority queue (O(log n)).
+ *
+ * schedule() may be called from any thread: tasks are handed over through a lock-free queue and placed
+ * in the slots by the single worker thread, which owns the slots. Expired tasks are passed to the
+ * expiry handler on the worker thread, so the handler must hand long-running work off to an executor.
+ *
+ * @param <T> The type of the scheduled tasks.
+ */
+
+public class HierarchicalTimerWheel<T> {
+    private final long tickMillis;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final int levels;
+    private final Consumer<T> expiryHandler;
+
+    // slots[level][slot], allocated lazily; only accessed by the worker thread
+    private final ArrayDeque<Entry<T>>[][] slots;
+
+    // Tasks scheduled by other threads, waiting to be placed in the slots by the worker thread
+    private final Queue<Entry<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+
+    private final long startMillis;
+    private long currentTick;
+    private volatile boolean running;
+    private Thread worker;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private record Entry<T>(long deadlineTick, T task) {
+    }
+
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimerWheel(long tickMillis, int wheelBits, int levels, Consumer<T> expiryHandler) {
+        Assert.isTrue(tickMillis > 0, "Tick duration must be greater than zero");
+        Assert.isTrue(wheelBits > 0 && wheelBits * levels < 63, "Wheel bits and levels must fit in a tick counter");
+        Assert.notNull(expiryHandler, "Expiry handler must not be null");
+
+        this.tickMillis = tickMillis;
+        this.wheelBits = wheelBits;
+        this.wheelMask = (1 << wheelBits) - 1;
+        this.levels = levels;
+        this.expiryHandler = expiryHandler;
+        this.slots = new ArrayDeque[levels][1 << wheelBits];
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Schedules a task to expire after the given delay.
+     *
+     * @param task        The task to schedule.
+     * @param delayMillis The delay in milliseconds; a delay of zero or less expires on the next tick.
+     */
+    public void schedule(T task, long delayMillis) {
+        Assert.notNull(task, "Task must not be null");
+
+        // Round up, so a task never expires before its deadline
+        long deadlineMillis = System.currentTimeMillis() + Math.max(0, delayMillis);
+        long deadlineTick = (deadlineMillis - startMillis + tickMillis - 1) / tickMillis;
+
+        incoming.add(new Entry<>(deadlineTick, task));
+        pending.incrementAndGet();
+    }
+
+    // Number of tasks scheduled but not yet expired
+    public long size() {
+        return pending.get();
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runWorker, "timer-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    private void runWorker() {
+        while (running) {
+            // Catch up with the wall clock, one tick at a time
+            long targetTick = (System.currentTimeMillis() - startMillis) / tickMillis;
+            while (currentTick < targetTick) {
+                currentTick++;
+                placeIncoming();
+                cascade();
+                expire(slots[0][(int) (currentTick & wheelMask)]);
+            }
+
+            try {
+                long nextTickMillis = startMillis + (currentTick + 1) * tickMillis;
+                Thread.sleep(Math.max(1, nextTickMillis - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void placeIncoming() {
+        Entry<T> entry;
+        while ((entry = incoming.poll()) != null) {
+            place(entry);
+        }
+    }
+
+    // Place an entry in the lowest level whose range covers its deadline
+    private void place(Entry<T> entry) {
+        long delta = entry.deadlineTick() - currentTick;
+        if (delta <= 0) {
+            fire(entry);
+            return;
+        }
+
+        int level = 0;
+        while (level < levels - 1 && delta >= (1L << (wheelBits * (level + 1)))) {
+            level++;
+        }
+
+        // Deadlines beyond the range of the top level are parked at its farthest slot and re-placed when cascaded
+        long placementTick = Math.min(entry.deadlineTick(), currentTick + (1L << (wheelBits * levels)) - 1);
+        int slot = (int) ((placementTick >>> (wheelBits * level)) & wheelMask);
+
+        ArrayDeque<Entry<T>> bucket = slots[level][slot];
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            slots[level][slot] = bucket;
+        }
+        bucket.add(entry);
+    }
+
+    // When the lower levels complete a rotation, move the matching slot of the level above down
+    private void cascade() {
+        int highest = 0;
+        while (highest < levels - 1 && (currentTick & ((1L << (wheelBits * (highest + 1))) - 1)) == 0) {
+            highest++;
+        }
+
+        // Higher levels first, so their entries can land in the lower slots cascaded right after
+        for (int level = highest; level >= 1; level--) {
+            ArrayDeque<Entry<T>> bucket = slots[level][(int) ((currentTick >>> (wheelBits * level)) & wheelMask)];
+            if (bucket == null || bucket.isEmpty()) {
+                continue;
+            }
+
+            int count = bucket.size();
+            for (int i = 0; i < count; i++) {
+                place(bucket.poll());
+            }
+        }
+    }
+
+    private void expire(ArrayDeque<Entry<T>> bucket) {
+        if (bucket == null) {
+            return;
+        }
+
+        Entry<T> entry;
+        while ((entry = bucket.poll()) != null) {
+            fire(entry);
+        }
+    }
+
+    private void fire(Entry<T> entry) {
+        pending.decrementAndGet();
+        try {
+            expiryHandler.accept(entry.task());
+        } catch (Exception e) {
+            logger.error("Error handling expired timer wheel task: {}", entry.task(), e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.yoanesber.redis_stream_producer.scheduler;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+import com.yoanesber.redis_stream_producer.entity.PaymentRetryTask;
+import com.yoanesber.redis_stream_producer.service.OrderPaymentService;
+
+/**
+ * PaymentRetryScheduler retries failed order payments in the background.
+ * Pending retries are held in a HierarchicalTimerWheel, so scheduling stays O(1) even with
+ * a very large number of pending retries, and each retry is delayed with exponential backoff and jitter.
+ *
+ * Every pending retry is also stored in a Redis hash (keyed by orderId) until it completes,
+ * and the hash is reloaded into the wheel on startup, so retries survive a restart.
+ * The stored request never includes the card CVV, and every entry expires pendingTtlMs after it is due:
+ * an expired retry is dropped when it is loaded or claimed, and the hash itself expires once no retry
+ * has been scheduled for longer than any entry can live.
+ *
+ * The hash is shared by all instances, so an instance that starts also loads the retries other instances
+ * are still running. Before running a due retry, an instance therefore claims that attempt with
+ * SET NX PX on "PAYMENT_RETRY:claim:{orderId}:{retryCount}" and checks that the hash still holds it:
+ * every attempt runs on exactly one instance, and copies loaded by other instances are dropped.
+ * When a retry fails and the maximum retry count has been reached, OrderPaymentService
+ * publishes the final PAYMENT_FAILED event.
+ */
+
+@Component
+public class PaymentRetryScheduler implements SmartLifecycle {
+    // enabled: Set to false to publish PAYMENT_FAILED immediately, without retrying
+    // maxRetries: Maximum number of retries per payment (the retryCount of the last attempt)
+    // initialBackoffMs / multiplier / maxBackoffMs: Exponential backoff, i.e. initialBackoffMs * multiplier^(retryCount - 1), capped at maxBackoffMs
+    // workers: Number of threads running the gateway calls of due retries
+    // claimTtlMs: Expiry of the claim of a retry attempt; must exceed the clock skew between instances,
+    // as every instance holding a copy of the attempt fires it at its own clock's due time
+    // pendingTtlMs: Time after its due time at which a retry that has not run (e.g. all instances were down) is dropped
+    @Value("${payment.retry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${payment.retry.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${payment.retry.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${payment.retry.multiplier:2.0}")
+    private double multiplier;
+
+    @Value("${payment.retry.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${payment.retry.workers:4}")
+    private int workers;
+
+    @Value("${payment.retry.claim-ttl-ms:300000}")
+    private long claimTtlMs;
+
+    @Value("${payment.retry.pending-ttl-ms:3600000}")
+    private long pendingTtlMs;
+
+    private static final String PENDING_RETRIES_KEY = "PAYMENT_RETRY:pending";
+    private static final String CLAIM_KEY_PREFIX = "PAYMENT_RETRY:claim:";
+
+    // Identifies this instance as the owner of its claims
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // 100 ms ticks, 4 levels of 256 slots: covers about 136 years, far beyond any backoff
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_LEVELS = 4;
+
+    private final HierarchicalTimerWheel<PaymentRetryTask> timerWheel =
+        new HierarchicalTimerWheel<>(TICK_MILLIS, WHEEL_BITS, WHEEL_LEVELS, this::onDue);
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    private final OrderPaymentService orderPaymentService;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // OrderPaymentService schedules retries through this component, so it is injected lazily to break the cycle
+    public PaymentRetryScheduler(@Lazy OrderPaymentService orderPaymentService, RedisTemplate<String, Object> redisTemplate) {
+        this.orderPaymentService = orderPaymentService;
+        this.redisTemplate = redisTemplate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Number of retries waiting in the timer wheel
+    public long pendingRetries() {
+        return timerWheel.size();
+    }
+
+    /**
+     * Schedules a retry of a failed order payment.
+     *
+     * @param orderPaymentDTO The original order payment request.
+     * @param retryCount      The retry attempt to schedule (1 for the first retry).
+     * @return true if the retry was scheduled, false if retries are disabled or exhausted.
+     */
+    public boolean schedule(CreateOrderPaymentRequestDTO orderPaymentDTO, int retryCount) {
+        Assert.notNull(orderPaymentDTO, "OrderPaymentDTO must not be null");
+
+        if (!enabled || retryCount > maxRetries) {
+            return false;
+        }
+
+        long delayMillis = backoffMillis(retryCount);
+        long dueAt = System.currentTimeMillis() + delayMillis;
+        PaymentRetryTask task = new PaymentRetryTask(withoutCardCvv(orderPaymentDTO), retryCount, dueAt, dueAt + pendingTtlMs);
+
+        // Persist first, so a retry is never only in memory; no entry outlives maxBackoffMs + pendingTtlMs,
+        // so refreshing the expiry of the hash on every put never expires a live entry
+        redisTemplate.opsForHash().put(PENDING_RETRIES_KEY, orderPaymentDTO.getOrderId(), task);
+        redisTemplate.expire(PENDING_RETRIES_KEY, Duration.ofMillis(maxBackoffMs + pendingTtlMs));
+        timerWheel.schedule(task, delayMillis);
+
+        logger.info("Scheduled retry {} of {} for order: {} in {} ms", retryCount, maxRetries, orderPaymentDTO.getOrderId(), delayMillis);
+        return true;
+    }
+
+    // Copy of the request without the card CVV, which must not be stored
+    private static CreateOrderPaymentRequestDTO withoutCardCvv(CreateOrderPaymentRequestDTO orderPaymentDTO) {
+        return new CreateOrderPaymentRequestDTO(orderPaymentDTO.getOrderId(), orderPaymentDTO.getAmount(),
+            orderPaymentDTO.getCurrency(), orderPaymentDTO.getPaymentMethod(), orderPaymentDTO.getCardNumber(),
+            orderPaymentDTO.getCardExpiry(), null, orderPaymentDTO.getPaypalEmail(),
+            orderPaymentDTO.getBankAccount(), orderPaymentDTO.getBankName());
+    }
+
+    // Exponential backoff with "equal jitter": half of the delay is fixed, the other half is random,
+    // which spreads retries of payments that failed together without making any delay too short
+    private long backoffMillis(int retryCount) {
+        double exponential = initialBackoffMs * Math.pow(multiplier, Math.max(0, retryCount - 1));
+        long backoff = (long) Math.min(exponential, (double) maxBackoffMs);
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    // Called on the timer wheel thread; the gateway call runs on the worker pool
+    private void onDue(PaymentRetryTask task) {
+        if (!running) {
+            return; // stays persisted and is reloaded on the next start
+        }
+        executor.execute(() -> retry(task));
+    }
+
+    private void retry(PaymentRetryTask task) {
+        CreateOrderPaymentRequestDTO orderPaymentDTO = task.getOrderPayment();
+        boolean lastAttempt = task.getRetryCount() >= maxRetries;
+
+        try {
+            if (!claim(task)) {
+                return;
+            }
+        } catch (Exception e) {
+            // Without a claim the attempt may be running elsewhere; it stays persisted and is reloaded on the next start
+            logger.error("Error claiming retry {} for order: {}", task.getRetryCount(), orderPaymentDTO.getOrderId(), e);
+            return;
+        }
+
+        try {
+            OrderPayment orderPayment = orderPaymentService.retryOrderPayment(orderPaymentDTO, task.getRetryCount(), lastAttempt);
+
+            if (orderPayment != null && "SUCCESS".equalsIgnoreCase(orderPayment.getPaymentStatus())) {
+                redisTemplate.opsForHash().delete(PENDING_RETRIES_KEY, orderPaymentDTO.getOrderId());
+                return;
+            }
+        } catch (Exception e) {
+            logger.error("Error retrying payment for order: {}", orderPaymentDTO.getOrderId(), e);
+        }
+
+        // The retry failed: schedule the next one, or drop it once the final PAYMENT_FAILED event has been published
+        if (lastAttempt || !schedule(orderPaymentDTO, task.getRetryCount() + 1)) {
+            redisTemplate.opsForHash().delete(PENDING_RETRIES_KEY, orderPaymentDTO.getOrderId());
+        }
+    }
+
+    // Claims a retry attempt for this instance; false if another instance claimed it,
+    // or if the attempt is no longer pending (completed, superseded by the next attempt, or expired)
+    private boolean claim(PaymentRetryTask task) {
+        String orderId = task.getOrderPayment().getOrderId();
+        if (task.getExpiresAt() <= System.currentTimeMillis()) {
+            logger.warn("Retry {} for order: {} expired before it ran, dropping it", task.getRetryCount(), orderId);
+            redisTemplate.opsForHash().delete(PENDING_RETRIES_KEY, orderId);
+            return false;
+        }
+
+        Boolean claimed = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands().set(
+            RedisSerializer.string().serialize(CLAIM_KEY_PREFIX + orderId + ":" + task.getRetryCount()),
+            RedisSerializer.string().serialize(instanceId),
+            Expiration.milliseconds(claimTtlMs),
+            SetOption.SET_IF_ABSENT));
+        if (!Boolean.TRUE.equals(claimed)) {
+            logger.info("Retry {} for order: {} is claimed by another instance", task.getRetryCount(), orderId);
+            return false;
+        }
+
+        Object pending = redisTemplate.opsForHash().get(PENDING_RETRIES_KEY, orderId);
+        if (!(pending instanceof PaymentRetryTask current) || current.getRetryCount() != task.getRetryCount()) {
+            logger.info("Retry {} for order: {} is no longer pending", task.getRetryCount(), orderId);
+            return false;
+        }
+        return true;
+    }
+
+    // Reload the retries persisted before the last shutdown, or still pending on other instances;
+    // each attempt is claimed when it is due, so it runs only once; expired retries are dropped
+    private void recover() {
+        Map<Object, Object> persisted = redisTemplate.opsForHash().entries(PENDING_RETRIES_KEY);
+        long now = System.currentTimeMillis();
+        int recovered = 0;
+
+        for (Map.Entry<Object, Object> entry : persisted.entrySet()) {
+            if (entry.getValue() instanceof PaymentRetryTask task && task.getExpiresAt() > now) {
+                timerWheel.schedule(task, task.getDueAt() - now);
+                recovered++;
+            } else {
+                redisTemplate.opsForHash().delete(PENDING_RETRIES_KEY, entry.getKey());
+            }
+        }
+
+        if (!persisted.isEmpty()) {
+            logger.info("Recovered {} pending payment retries, dropped {} expired", recovered, persisted.size() - recovered);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        executor = Executors.newFixedThreadPool(workers);
+        running = true;
+        timerWheel.start();
+        recover();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        timerWheel.stop();
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                // Let in-flight gateway calls finish; unfinished retries stay persisted in Redis
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
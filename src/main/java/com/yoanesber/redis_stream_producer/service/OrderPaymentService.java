@@ -1,6 +1,13 @@
 package com.yoanesber.redis_stream_producer.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
 import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.OrderPaymentImportProgressDTO;
 import com.yoanesber.redis_stream_producer.entity.OrderPayment;
 
 /**
@@ -12,4 +19,22 @@ import com.yoanesber.redis_stream_producer.entity.OrderPayment;
 public interface OrderPaymentService {
     // Create a new OrderPayment record.
     OrderPayment createOrderPayment(CreateOrderPaymentRequestDTO orderPaymentDTO);
+
+    // Retry a failed order payment; publishes PAYMENT_SUCCESS on success, or PAYMENT_FAILED if the last attempt fails.
+    OrderPayment retryOrderPayment(CreateOrderPaymentRequestDTO orderPaymentDTO, int retryCount, boolean lastAttempt);
+
+    // Get the latest OrderPayment record of an order, or null if not found.
+    OrderPayment getOrderPaymentByOrderId(String orderId);
+
+    // Get the ID of the PAYMENT_SUCCESS stream entry of an order from the stream index, or null if not indexed.
+    String getPaymentSuccessRecordId(String orderId);
+
+    // Get the OrderPayment record with the given gateway transaction ID, or null if not found.
+    OrderPayment getOrderPaymentByTransactionId(String transactionId);
+
+    // Get the OrderPayment records created in [from, to), oldest first.
+    List<OrderPayment> getOrderPaymentsByCreatedAt(Instant from, Instant to, int limit);
+
+    // Import order payments from an NDJSON stream, reporting progress after every published batch.
+    OrderPaymentImportProgressDTO importOrderPayments(InputStream ndjson, Consumer<OrderPaymentImportProgressDTO> progressListener) throws IOException;
 }
@@ -1,13 +1,26 @@
 package com.yoanesber.redis_stream_producer.service.impl;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.OrderPaymentImportProgressDTO;
 import com.yoanesber.redis_stream_producer.dto.PaymentBankRequestDTO;
 import com.yoanesber.redis_stream_producer.dto.PaymentCCRequestDTO;
 import com.yoanesber.redis_stream_producer.dto.PaymentPaypalRequestDTO;
@@ -15,7 +28,13 @@ import com.yoanesber.redis_stream_producer.dto.PaymentResponseDTO;
 import com.yoanesber.redis_stream_producer.entity.Order;
 import com.yoanesber.redis_stream_producer.entity.OrderDetail;
 import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+import com.yoanesber.redis_stream_producer.gateway.GatewayHedger;
+import com.yoanesber.redis_stream_producer.gateway.GatewaySimulator;
+import com.yoanesber.redis_stream_producer.ratelimit.CustomerRateLimiter;
+import com.yoanesber.redis_stream_producer.redis.EventCoalescer;
 import com.yoanesber.redis_stream_producer.redis.MessageProducer;
+import com.yoanesber.redis_stream_producer.repository.OrderPaymentStore;
+import com.yoanesber.redis_stream_producer.scheduler.PaymentRetryScheduler;
 import com.yoanesber.redis_stream_producer.service.OrderPaymentService;
 
 /**
@@ -25,17 +44,44 @@ import com.yoanesber.redis_stream_producer.service.OrderPaymentService;
  * and handle order retrieval and validation.
  * This service interacts with a message producer to publish payment events
  * to a Redis stream for further processing.
+ *
+ * PAYMENT_FAILED events go through the EventCoalescer: a failed payment can be reported more than once
+ * (e.g. by the gateway call and again by createOrderPayment), and duplicates for the same orderId
+ * within the coalescing window are merged into a single entry with a coalescedCount field.
  */
 
 @Service
 public class OrderPaymentServiceImpl implements OrderPaymentService {
     private final MessageProducer messageProducer;
+    private final EventCoalescer eventCoalescer;
+    private final PaymentRetryScheduler paymentRetryScheduler;
+    private final GatewayHedger gatewayHedger;
+    private final OrderPaymentStore orderPaymentStore;
+    private final CustomerRateLimiter customerRateLimiter;
+    private final ObservationRegistry observationRegistry;
+    private final ObjectMapper objectMapper;
 
     private static final String PAYMENT_SUCCESS_STREAM = "PAYMENT_SUCCESS";
     private static final String PAYMENT_FAILED_STREAM = "PAYMENT_FAILED";
+    private static final String PAYMENT_IMPORT_STREAM = "PAYMENT_IMPORT";
+    private static final Set<String> SUPPORTED_PAYMENT_METHODS = Set.of("CREDIT_CARD", "PAYPAL", "BANK_TRANSFER");
 
-    public OrderPaymentServiceImpl(MessageProducer messageProducer) {
+    // Number of imported records published per pipelined XADD batch
+    // This also bounds the number of records held in memory during an import.
+    @Value("${order-payment.import.batch-size:500}")
+    private int importBatchSize;
+
+    public OrderPaymentServiceImpl(MessageProducer messageProducer, EventCoalescer eventCoalescer,
+            PaymentRetryScheduler paymentRetryScheduler, GatewayHedger gatewayHedger, OrderPaymentStore orderPaymentStore,
+            CustomerRateLimiter customerRateLimiter, ObservationRegistry observationRegistry, ObjectMapper objectMapper) {
         this.messageProducer = messageProducer;
+        this.eventCoalescer = eventCoalescer;
+        this.paymentRetryScheduler = paymentRetryScheduler;
+        this.gatewayHedger = gatewayHedger;
+        this.orderPaymentStore = orderPaymentStore;
+        this.customerRateLimiter = customerRateLimiter;
+        this.observationRegistry = observationRegistry;
+        this.objectMapper = objectMapper;
     }
 
     private Order getOrderByID (String orderId) {
@@ -101,7 +147,8 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
         return order;
     }
 
-    private void validateOrderPayment(CreateOrderPaymentRequestDTO orderPaymentDTO) {
+    // The order is fetched by the caller, so a payment looks its order up only once
+    private void validateOrderPayment(CreateOrderPaymentRequestDTO orderPaymentDTO, Order order) {
         Assert.notNull(orderPaymentDTO, "OrderPaymentDTO must not be null");
         Assert.notNull(orderPaymentDTO.getOrderId(), "Order ID must not be null");
         Assert.notNull(orderPaymentDTO.getAmount(), "Amount must not be null");
@@ -123,7 +170,6 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
         }
 
         // Check if the order exists
-        Order order = this.getOrderByID(orderPaymentDTO.getOrderId());
         if (order == null) {
             throw new IllegalArgumentException("Order not found: " + orderPaymentDTO.getOrderId());
         }
@@ -147,11 +193,12 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
 
         // Call the credit card payment gateway API
         try {
-            // Simulate processing the payment
-            Thread.sleep(2000); // Simulate a delay of 2 seconds
+            // Simulate processing the payment (latency and outcome are configured per payment method)
+            // The call is hedged with a second attempt if the gateway is slow and hedging is enabled for the method
+            GatewaySimulator.Outcome outcome = gatewayHedger.call("CREDIT_CARD");
 
-            // For simplicity, we will generate a random transaction ID
-            String transactionId = "TXN" + System.currentTimeMillis();
+            // For simplicity, we will generate a random transaction ID; declined or timed out payments get none
+            String transactionId = outcome == GatewaySimulator.Outcome.SUCCESS ? "TXN" + System.currentTimeMillis() : "";
             String paymentStatus = "SUCCESS"; // Assume payment is successful
 
             // Check if the transaction ID is empty
@@ -162,7 +209,7 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
 
             return new PaymentResponseDTO(transactionId, paymentStatus);
         } catch (InterruptedException e) {
-            messageProducer.produce(PAYMENT_FAILED_STREAM, paymentCCRequestDTO);
+            eventCoalescer.produce(PAYMENT_FAILED_STREAM, paymentCCRequestDTO, paymentCCRequestDTO.getOrderId());
             return null;
         }
     }
@@ -172,11 +219,12 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
 
         // Call the PayPal payment gateway API
         try {
-            // Simulate processing the payment
-            Thread.sleep(2000); // Simulate a delay of 2 seconds
+            // Simulate processing the payment (latency and outcome are configured per payment method)
+            // The call is hedged with a second attempt if the gateway is slow and hedging is enabled for the method
+            GatewaySimulator.Outcome outcome = gatewayHedger.call("PAYPAL");
 
-            // For simplicity, we will generate a random transaction ID
-            String transactionId = "TXN" + System.currentTimeMillis();
+            // For simplicity, we will generate a random transaction ID; declined or timed out payments get none
+            String transactionId = outcome == GatewaySimulator.Outcome.SUCCESS ? "TXN" + System.currentTimeMillis() : "";
             String paymentStatus = "SUCCESS"; // Assume payment is successful
 
             // Check if the transaction ID is empty
@@ -187,7 +235,7 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
 
             return new PaymentResponseDTO(transactionId, paymentStatus);
         } catch (InterruptedException e) {
-            messageProducer.produce(PAYMENT_FAILED_STREAM, paymentPaypalRequestDTO);
+            eventCoalescer.produce(PAYMENT_FAILED_STREAM, paymentPaypalRequestDTO, paymentPaypalRequestDTO.getOrderId());
             return null;
         }
     }
@@ -197,11 +245,12 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
 
         // Call the bank transfer payment gateway API
         try {
-            // Simulate processing the payment
-            Thread.sleep(2000); // Simulate a delay of 2 seconds
+            // Simulate processing the payment (latency and outcome are configured per payment method)
+            // The call is hedged with a second attempt if the gateway is slow and hedging is enabled for the method
+            GatewaySimulator.Outcome outcome = gatewayHedger.call("BANK_TRANSFER");
 
-            // For simplicity, we will generate a random transaction ID
-            String transactionId = "TXN" + System.currentTimeMillis();
+            // For simplicity, we will generate a random transaction ID; declined or timed out payments get none
+            String transactionId = outcome == GatewaySimulator.Outcome.SUCCESS ? "TXN" + System.currentTimeMillis() : "";
             String paymentStatus = "SUCCESS"; // Assume payment is successful
 
             // Check if the transaction ID is empty
@@ -212,7 +261,7 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
 
             return new PaymentResponseDTO(transactionId, paymentStatus);
         } catch (InterruptedException e) {
-            messageProducer.produce(PAYMENT_FAILED_STREAM, paymentBankRequestDTO);
+            eventCoalescer.produce(PAYMENT_FAILED_STREAM, paymentBankRequestDTO, paymentBankRequestDTO.getOrderId());
             return null;
         }
     }
@@ -246,18 +295,27 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
     @Override
     public OrderPayment createOrderPayment(CreateOrderPaymentRequestDTO orderPaymentDTO) {
         Assert.notNull(orderPaymentDTO, "OrderPaymentDTO must not be null");
+        Assert.notNull(orderPaymentDTO.getOrderId(), "Order ID must not be null");
+
+        // Apply the rate limit of the customer before any gateway or Redis capacity is spent
+        // Imports are not limited, as they are operator-driven and already paced by their batches
+        Order order = this.getOrderByID(orderPaymentDTO.getOrderId());
+        if (order != null) {
+            customerRateLimiter.acquire(order.getCustomerId());
+        }
         
         // Validate request (check order exists, amount is valid, etc.)
-        this.validateOrderPayment(orderPaymentDTO);
+        this.observation("payment.validate", orderPaymentDTO).observe(() -> this.validateOrderPayment(orderPaymentDTO, order));
         
         // Call the payment gateway API and get the transaction details
         String paymentStatus = "FAILED"; // Default to FAILED
         String transactionId = "";
-        PaymentResponseDTO paymentResponse = this.processPayment(orderPaymentDTO);
+        PaymentResponseDTO paymentResponse = this.observation("payment.gateway", orderPaymentDTO)
+            .observe(() -> this.processPayment(orderPaymentDTO));
 
         // Check if the payment response is null (indicating a failure)
         if (paymentResponse == null) {
-            messageProducer.produce(PAYMENT_FAILED_STREAM, orderPaymentDTO);
+            eventCoalescer.produce(PAYMENT_FAILED_STREAM, orderPaymentDTO, orderPaymentDTO.getOrderId());
             throw new IllegalArgumentException("Payment processing failed");
         }
 
@@ -267,11 +325,121 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
 
         // Check if the payment status is "FAILED"
         if (paymentStatus.equalsIgnoreCase("FAILED") || transactionId == null || transactionId.isEmpty()) {
-            // If payment failed, publish a Redis event to the PAYMENT_FAILED_STREAM channel
-            messageProducer.produce(PAYMENT_FAILED_STREAM, orderPaymentDTO);
+            // If payment failed, schedule a retry; the payment stays PENDING until the retry succeeds or is exhausted
+            if (paymentRetryScheduler.schedule(orderPaymentDTO, 1)) {
+                return orderPaymentStore.save(this.toOrderPayment(orderPaymentDTO, "", "PENDING", 0));
+            }
+
+            // If retries are disabled, publish a Redis event to the PAYMENT_FAILED_STREAM channel
+            eventCoalescer.produce(PAYMENT_FAILED_STREAM, orderPaymentDTO, orderPaymentDTO.getOrderId());
             throw new IllegalArgumentException("Payment processing failed with status: " + paymentStatus + " and transaction ID: " + transactionId);
         }
 
+        // Create an OrderPayment entity
+        OrderPayment orderPayment = this.toOrderPayment(orderPaymentDTO, transactionId, paymentStatus, 0);
+
+        // Save the OrderPayment entity to the in-memory store, so it can be looked up without reading the stream
+        orderPaymentStore.save(orderPayment);
+
+        // Publish a Redis event to the PAYMENT_SUCCESS_STREAM channel if successful
+        // The event is indexed by orderId in the same round trip, so it can be looked up without scanning the stream
+        this.observation("payment.publish", orderPaymentDTO)
+            .observe(() -> messageProducer.produceWithIndex(PAYMENT_SUCCESS_STREAM, orderPayment, "orderId"));
+
+        // For simplicity, we will return the OrderPayment object directly
+        return orderPayment;
+    }
+
+    @Override
+    public OrderPayment retryOrderPayment(CreateOrderPaymentRequestDTO orderPaymentDTO, int retryCount, boolean lastAttempt) {
+        Assert.notNull(orderPaymentDTO, "OrderPaymentDTO must not be null");
+
+        // Retries run on the scheduler threads, outside of any request, so each retry starts its own trace
+        return this.observation("payment.retry", orderPaymentDTO)
+            .highCardinalityKeyValue("retry.count", String.valueOf(retryCount))
+            .observe(() -> this.retry(orderPaymentDTO, retryCount, lastAttempt));
+    }
+
+    private OrderPayment retry(CreateOrderPaymentRequestDTO orderPaymentDTO, int retryCount, boolean lastAttempt) {
+        // Call the payment gateway API again
+        PaymentResponseDTO paymentResponse;
+        try {
+            paymentResponse = this.observation("payment.gateway", orderPaymentDTO)
+                .observe(() -> this.processPayment(orderPaymentDTO));
+        } catch (RuntimeException e) {
+            // Once the last retry has failed, publish the final outcome to the PAYMENT_FAILED_STREAM channel
+            if (lastAttempt) {
+                eventCoalescer.produce(PAYMENT_FAILED_STREAM, orderPaymentDTO, orderPaymentDTO.getOrderId());
+            }
+            throw e;
+        }
+
+        // Check if the retry failed (no response, "FAILED" status or empty transaction ID)
+        if (paymentResponse == null
+            || paymentResponse.getPaymentStatus().equalsIgnoreCase("FAILED")
+            || paymentResponse.getTransactionId() == null
+            || paymentResponse.getTransactionId().isEmpty()) {
+            // Once the last retry has failed, publish the final outcome to the PAYMENT_FAILED_STREAM channel
+            if (lastAttempt) {
+                eventCoalescer.produce(PAYMENT_FAILED_STREAM, orderPaymentDTO, orderPaymentDTO.getOrderId());
+                return orderPaymentStore.save(this.toOrderPayment(orderPaymentDTO, "", "FAILED", retryCount));
+            }
+            return this.toOrderPayment(orderPaymentDTO, "", "FAILED", retryCount);
+        }
+
+        OrderPayment orderPayment = this.toOrderPayment(orderPaymentDTO, paymentResponse.getTransactionId(), paymentResponse.getPaymentStatus(), retryCount);
+        orderPaymentStore.save(orderPayment);
+
+        // Publish a Redis event to the PAYMENT_SUCCESS_STREAM channel if the retry succeeded
+        this.observation("payment.publish", orderPaymentDTO)
+            .observe(() -> messageProducer.produceWithIndex(PAYMENT_SUCCESS_STREAM, orderPayment, "orderId"));
+
+        return orderPayment;
+    }
+
+    @Override
+    public OrderPayment getOrderPaymentByOrderId(String orderId) {
+        Assert.hasText(orderId, "Order ID must not be empty");
+        return orderPaymentStore.findByOrderId(orderId);
+    }
+
+    @Override
+    public String getPaymentSuccessRecordId(String orderId) {
+        Assert.hasText(orderId, "Order ID must not be empty");
+        RecordId recordId = messageProducer.findRecordId(PAYMENT_SUCCESS_STREAM, "orderId", orderId);
+        return recordId == null ? null : recordId.getValue();
+    }
+
+    @Override
+    public OrderPayment getOrderPaymentByTransactionId(String transactionId) {
+        Assert.hasText(transactionId, "Transaction ID must not be empty");
+        return orderPaymentStore.findByTransactionId(transactionId);
+    }
+
+    @Override
+    public List<OrderPayment> getOrderPaymentsByCreatedAt(Instant from, Instant to, int limit) {
+        Assert.notNull(from, "From must not be null");
+        Assert.notNull(to, "To must not be null");
+        Assert.isTrue(!to.isBefore(from), "To must not be before from");
+        return orderPaymentStore.findByCreatedAtBetween(from, to, limit);
+    }
+
+    // Creates a span (and timer) for one step of a payment, tagged with the payment method
+    // Validation, the gateway call and publishing run in their own spans (payment.validate, payment.gateway,
+    // payment.publish), children of the HTTP request span or of the payment.retry span of a background retry;
+    // MessageProducer writes the trace context of the current span into every stream entry
+    // Unsupported methods share one tag value, so invalid requests cannot blow up the tag cardinality
+    private Observation observation(String name, CreateOrderPaymentRequestDTO orderPaymentDTO) {
+        String paymentMethod = orderPaymentDTO.getPaymentMethod() == null ? "" : orderPaymentDTO.getPaymentMethod().toUpperCase();
+        if (!SUPPORTED_PAYMENT_METHODS.contains(paymentMethod)) {
+            paymentMethod = "OTHER";
+        }
+
+        return Observation.createNotStarted(name, observationRegistry)
+            .lowCardinalityKeyValue("payment.method", paymentMethod);
+    }
+
+    private OrderPayment toOrderPayment(CreateOrderPaymentRequestDTO orderPaymentDTO, String transactionId, String paymentStatus, int retryCount) {
         // Create an OrderPayment entity
         OrderPayment orderPayment = new OrderPayment();
         orderPayment.setOrderId(orderPaymentDTO.getOrderId());
@@ -292,15 +460,73 @@ public class OrderPaymentServiceImpl implements OrderPaymentService {
         }
 
         orderPayment.setTransactionId(transactionId);
+        orderPayment.setRetryCount(retryCount);
         orderPayment.setCreatedAt(Instant.now());
         orderPayment.setUpdatedAt(Instant.now());
 
-        // Save the OrderPayment entity to the database
-        
-        // Publish a Redis event to the PAYMENT_SUCCESS_STREAM channel if successful
-        messageProducer.produce(PAYMENT_SUCCESS_STREAM, orderPayment);
-
-        // For simplicity, we will return the OrderPayment object directly
         return orderPayment;
     }
-}
+
+    @Override
+    public OrderPaymentImportProgressDTO importOrderPayments(InputStream ndjson, Consumer<OrderPaymentImportProgressDTO> progressListener) throws IOException {
+        Assert.notNull(ndjson, "NDJSON input stream must not be null");
+        Assert.notNull(progressListener, "Progress listener must not be null");
+
+        OrderPaymentImportProgressDTO progress = new OrderPaymentImportProgressDTO();
+        List<CreateOrderPaymentRequestDTO> batch = new ArrayList<>(importBatchSize);
+
+        // Each NDJSON line is a root-level JSON value, so the parser reads one record at a time
+        // from the request body and never buffers the whole input
+        try (JsonParser parser = objectMapper.getFactory().createParser(ndjson)) {
+            while (parser.nextToken() != null) {
+                CreateOrderPaymentRequestDTO orderPaymentDTO;
+                try {
+                    orderPaymentDTO = objectMapper.readValue(parser, CreateOrderPaymentRequestDTO.class);
+                } catch (JsonProcessingException e) {
+                    // The parser cannot resynchronize after malformed input, so the import stops here;
+                    // the records parsed so far are still published and reported
+                    progress.setLastError("Malformed record after " + progress.getProcessed() + " records: " + e.getOriginalMessage());
+                    progress.setStatus("FAILED");
+                    break;
+                }
+
+                progress.setProcessed(progress.getProcessed() + 1);
+
+                // Validate request (check order exists, amount is valid, etc.)
+                try {
+                    this.validateOrderPayment(orderPaymentDTO,
+                        orderPaymentDTO.getOrderId() == null ? null : this.getOrderByID(orderPaymentDTO.getOrderId()));
+                    batch.add(orderPaymentDTO);
+                } catch (IllegalArgumentException e) {
+                    progress.setRejected(progress.getRejected() + 1);
+                    progress.setLastError("Record " + progress.getProcessed() + ": " + e.getMessage());
+                }
+
+                // Publishing blocks until Redis has acknowledged the batch,
+                // so no more input is read while a batch is in flight
+                if (batch.size() >= importBatchSize) {
+                    this.publishImportBatch(batch, progress);
+                    progressListener.accept(progress);
+                }
+            }
+        }
+
+        // Publish the remaining records
+        if (!batch.isEmpty()) {
+            this.publishImportBatch(batch, progress);
+        }
+
+        if (!progress.getStatus().equals("FAILED")) {
+            progress.setStatus("COMPLETED");
+        }
+        progressListener.accept(progress);
+
+        return progress;
+    }
+
+    private void publishImportBatch(List<CreateOrderPaymentRequestDTO> batch, OrderPaymentImportProgressDTO progress) {
+        messageProducer.produceBatch(PAYMENT_IMPORT_STREAM, batch);
+        progress.setPublished(progress.getPublished() + batch.size());
+        batch.clear();
+    }
+}
\ No newline at end of file
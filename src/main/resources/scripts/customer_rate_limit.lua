@@ -0,0 +1,25 @@
+-- Takes a token from a customer's bucket shared by all producer instances.
+-- The bucket is stored as the time (in microseconds, Redis clock) at which it will be full again,
+-- the same representation as TokenBucket, so a single key holds the whole state and expires once full.
+--
+-- KEYS[1] : bucket key
+--
+-- ARGV[1] : time to refill one token, in microseconds
+-- ARGV[2] : burst, in tokens
+--
+-- Returns 0 if a token was taken, otherwise the number of microseconds until one is available.
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local interval = tonumber(ARGV[1])
+local tolerance = interval * tonumber(ARGV[2])
+
+local fullAt = tonumber(redis.call('GET', KEYS[1]) or now)
+local nextFullAt = math.max(fullAt, now) + interval
+local ahead = nextFullAt - now
+if ahead > tolerance then
+    return ahead - tolerance
+end
+
+redis.call('SET', KEYS[1], string.format('%.0f', nextFullAt), 'PX', math.ceil(ahead / 1000))
+return 0
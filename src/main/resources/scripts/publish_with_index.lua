@@ -0,0 +1,55 @@
+-- Atomically publishes one entry to a stream, indexes it by a business key and bumps the stream counters.
+-- Everything runs in a single round trip, so the index never points to an entry that was not written.
+--
+-- The index is trimmed together with the stream: a sorted set holds every index value scored by the
+-- millisecond part of its record ID, and after XADD has trimmed the stream the values older than the
+-- oldest remaining entry are removed from both the hash and the sorted set.
+--
+-- KEYS[1] : stream key
+-- KEYS[2] : index hash key (index value -> record ID)
+-- KEYS[3] : counters hash key
+-- KEYS[4] : index order key (sorted set of index values, scored by record ID milliseconds)
+--
+-- ARGV[1] : record ID to use for XADD
+-- ARGV[2] : MAXLEN for the stream
+-- ARGV[3] : "1" to use approximate trimming (~), "0" for exact trimming
+-- ARGV[4] : index value (e.g. the orderId); empty to skip indexing
+-- ARGV[5] : TTL of the index keys in seconds, refreshed on every indexed publish
+-- ARGV[6] : maximum number of trimmed index values removed per call
+-- ARGV[7..n] : field/value pairs of the entry
+
+local xadd = { 'XADD', KEYS[1], 'MAXLEN' }
+if ARGV[3] == '1' then
+    table.insert(xadd, '~')
+end
+table.insert(xadd, ARGV[2])
+table.insert(xadd, ARGV[1])
+for i = 7, #ARGV do
+    table.insert(xadd, ARGV[i])
+end
+
+local id = redis.call(unpack(xadd))
+
+if ARGV[4] ~= '' then
+    redis.call('HSET', KEYS[2], ARGV[4], id)
+    redis.call('ZADD', KEYS[4], string.match(id, '^(%d+)'), ARGV[4])
+    redis.call('EXPIRE', KEYS[2], tonumber(ARGV[5]))
+    redis.call('EXPIRE', KEYS[4], tonumber(ARGV[5]))
+end
+
+-- Drop the index values of entries trimmed from the stream; the removal is bounded per call,
+-- so a large trim (e.g. after lowering MAXLEN) is caught up over the following publishes
+local oldest = redis.call('XRANGE', KEYS[1], '-', '+', 'COUNT', 1)
+if oldest[1] then
+    local trimmed = redis.call('ZRANGEBYSCORE', KEYS[4], '-inf', '(' .. string.match(oldest[1][1], '^(%d+)'),
+        'LIMIT', 0, tonumber(ARGV[6]))
+    if #trimmed > 0 then
+        redis.call('HDEL', KEYS[2], unpack(trimmed))
+        redis.call('ZREM', KEYS[4], unpack(trimmed))
+    end
+end
+
+redis.call('HINCRBY', KEYS[3], 'published', 1)
+redis.call('HSET', KEYS[3], 'lastId', id)
+
+return id
@@ -0,0 +1,13 @@
+-- Releases the lease of a replay job, but only for the run that owns it, so a run that lost its lease
+-- cannot delete the lease of the run that took over.
+--
+-- KEYS[1] : lease key
+--
+-- ARGV[1] : owner token of the run
+--
+-- Returns 1 if the lease was released, 0 if the run no longer owns it.
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
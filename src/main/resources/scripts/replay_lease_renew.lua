@@ -0,0 +1,15 @@
+-- Renews the lease of a replay job, but only for the run that owns it.
+-- A run whose lease expired (e.g. after a long pause) and was taken over by another instance must not
+-- extend the lease of the new owner, so the owner token is compared and the expiry set in one step.
+--
+-- KEYS[1] : lease key
+--
+-- ARGV[1] : owner token of the run
+-- ARGV[2] : expiry of the lease, in milliseconds
+--
+-- Returns 1 if the lease was renewed, 0 if the run no longer owns it.
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], tonumber(ARGV[2]))
+end
+return 0
@@ -0,0 +1,47 @@
+package com.yoanesber.redis_stream_producer.config.aot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import com.yoanesber.redis_stream_producer.config.serializer.InstantSerializer;
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.dto.ReplayJobDTO;
+import com.yoanesber.redis_stream_producer.dto.StreamSettingsDTO;
+import com.yoanesber.redis_stream_producer.entity.OrderDetail;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+import com.yoanesber.redis_stream_producer.entity.PaymentRetryTask;
+
+class ProducerRuntimeHintsTest {
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @BeforeEach
+    void setUp() {
+        new ProducerRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void registersJacksonBoundTypes() {
+        for (Class<?> type : new Class<?>[] { CreateOrderPaymentRequestDTO.class, OrderPayment.class, PaymentRetryTask.class, ReplayJobDTO.class,
+                StreamSettingsDTO.class }) {
+            assertThat(RuntimeHintsPredicates.reflection().onType(type)).as(type.getSimpleName()).accepts(hints);
+        }
+
+        // Nested types are registered with their parent
+        assertThat(RuntimeHintsPredicates.reflection().onType(OrderDetail.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(InstantSerializer.class)
+            .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)).accepts(hints);
+    }
+
+    @Test
+    void registersLuaScripts() {
+        assertThat(RuntimeHintsPredicates.resource().forResource("scripts/publish_with_index.lua")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("scripts/customer_rate_limit.lua")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("scripts/replay_lease_renew.lua")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("scripts/replay_lease_release.lua")).accepts(hints);
+    }
+}
@@ -0,0 +1,132 @@
+package com.yoanesber.redis_stream_producer.gateway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.config.gateway.GatewayHedgingProperties;
+import com.yoanesber.redis_stream_producer.config.gateway.GatewayHedgingProperties.HedgeProfile;
+import com.yoanesber.redis_stream_producer.gateway.GatewayHedger.LatencyWindow;
+import com.yoanesber.redis_stream_producer.gateway.GatewaySimulator.Outcome;
+
+class GatewayHedgerTest {
+    private final GatewaySimulator gatewaySimulator = mock(GatewaySimulator.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GatewayHedgingProperties properties = new GatewayHedgingProperties();
+    private final GatewayHedger hedger = new GatewayHedger(gatewaySimulator, properties, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        hedger.destroy();
+    }
+
+    @Test
+    void methodWithoutProfileCallsTheGatewayOnce() throws Exception {
+        when(gatewaySimulator.simulate("PAYPAL")).thenReturn(Outcome.SUCCESS);
+
+        assertThat(hedger.call("paypal")).isEqualTo(Outcome.SUCCESS);
+
+        verify(gatewaySimulator, times(1)).simulate("PAYPAL");
+        assertThat(meterRegistry.find("payment.gateway.hedge.requests").counter()).isNull();
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndCancelled() throws Exception {
+        enableHedging("CREDIT_CARD");
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        when(gatewaySimulator.simulate("CREDIT_CARD")).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    primaryInterrupted.countDown();
+                    throw e;
+                }
+                return Outcome.FAILED;
+            }
+            return Outcome.SUCCESS;
+        });
+
+        long start = System.nanoTime();
+        assertThat(hedger.call("CREDIT_CARD")).isEqualTo(Outcome.SUCCESS);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+        assertThat(primaryInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.get("payment.gateway.hedge.requests").tag("method", "CREDIT_CARD").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.gateway.hedge.fired").tag("method", "CREDIT_CARD").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.gateway.hedge.wins").tag("method", "CREDIT_CARD").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.gateway.hedge.wasted").tag("method", "CREDIT_CARD").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void primaryLosingToTheHedgeIsRecordedInTheLatencyWindow() throws Exception {
+        enableHedging("CREDIT_CARD");
+        AtomicInteger calls = new AtomicInteger();
+        when(gatewaySimulator.simulate("CREDIT_CARD")).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                Thread.sleep(10_000);
+            }
+            return Outcome.SUCCESS;
+        });
+
+        assertThat(hedger.call("CREDIT_CARD")).isEqualTo(Outcome.SUCCESS);
+
+        // Both the fast hedge and the cancelled primary, which ran at least the 50 ms hedge delay, are in the window
+        @SuppressWarnings("unchecked")
+        LatencyWindow window = ((Map<String, LatencyWindow>) ReflectionTestUtils.getField(hedger, "latencies")).get("CREDIT_CARD");
+        assertThat(window.percentile(0.0, 2, -1)).isLessThan(50);
+        assertThat(window.percentile(1.0, 2, -1)).isGreaterThanOrEqualTo(50);
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() throws Exception {
+        enableHedging("CREDIT_CARD");
+        when(gatewaySimulator.simulate("CREDIT_CARD")).thenReturn(Outcome.FAILED);
+
+        assertThat(hedger.call("CREDIT_CARD")).isEqualTo(Outcome.FAILED);
+
+        verify(gatewaySimulator, times(1)).simulate("CREDIT_CARD");
+        assertThat(meterRegistry.find("payment.gateway.hedge.fired").counter()).isNull();
+    }
+
+    @Test
+    void latencyWindowUsesTheFallbackUntilEnoughSamples() {
+        LatencyWindow window = new LatencyWindow(100);
+        for (long latency = 1; latency <= 9; latency++) {
+            window.record(latency);
+        }
+        assertThat(window.percentile(0.95, 10, 500)).isEqualTo(500);
+
+        for (long latency = 10; latency <= 100; latency++) {
+            window.record(latency);
+        }
+        assertThat(window.percentile(0.95, 10, 500)).isEqualTo(95);
+        assertThat(window.percentile(0.5, 10, 500)).isEqualTo(50);
+
+        // The ring buffer keeps the most recent samples only; the percentile is recomputed after enough new samples
+        for (int i = 0; i < 100; i++) {
+            window.record(1000);
+        }
+        assertThat(window.percentile(0.5, 10, 500)).isEqualTo(1000);
+    }
+
+    private void enableHedging(String method) {
+        HedgeProfile profile = new HedgeProfile();
+        profile.setEnabled(true);
+        profile.setInitialDelayMs(50);
+        properties.getMethods().put(method, profile);
+    }
+}
@@ -0,0 +1,91 @@
+package com.yoanesber.redis_stream_producer.gateway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.config.gateway.GatewaySimulatorProperties;
+import com.yoanesber.redis_stream_producer.config.gateway.GatewaySimulatorProperties.Distribution;
+import com.yoanesber.redis_stream_producer.config.gateway.GatewaySimulatorProperties.MethodProfile;
+import com.yoanesber.redis_stream_producer.gateway.GatewaySimulator.Outcome;
+
+class GatewaySimulatorTest {
+
+    @Test
+    void sameSeedReplaysTheSameOutcomes() throws Exception {
+        List<Outcome> first = outcomes(new GatewaySimulator(properties(7L, 0.3, 0.1)), 200);
+        List<Outcome> second = outcomes(new GatewaySimulator(properties(7L, 0.3, 0.1)), 200);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(first).filteredOn(outcome -> outcome == Outcome.FAILED).hasSizeBetween(35, 85);
+        assertThat(first).filteredOn(outcome -> outcome == Outcome.TIMEOUT).hasSizeBetween(5, 40);
+    }
+
+    @Test
+    void paymentMethodIsMatchedCaseInsensitively() throws Exception {
+        GatewaySimulator simulator = new GatewaySimulator(properties(1L, 1.0, 0.0));
+
+        assertThat(simulator.simulate("credit_card")).isEqualTo(Outcome.FAILED);
+        assertThatThrownBy(() -> simulator.simulate(" ")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void latenciesFollowTheProfileDistribution() {
+        GatewaySimulator simulator = new GatewaySimulator(new GatewaySimulatorProperties());
+        Random random = new Random(3);
+
+        MethodProfile uniform = profile(Distribution.UNIFORM);
+        uniform.setMinMs(100);
+        uniform.setMaxMs(200);
+        MethodProfile logNormal = profile(Distribution.LOG_NORMAL);
+        logNormal.setMedianMs(300);
+        logNormal.setSigma(2.0);
+        logNormal.setMaxMs(1000);
+        MethodProfile histogram = profile(Distribution.HISTOGRAM);
+        histogram.setSamplesMs(List.of(120L, 900L, 3000L));
+
+        for (int i = 0; i < 500; i++) {
+            assertThat(latencyMs(simulator, uniform, random)).isBetween(100L, 199L);
+            assertThat(latencyMs(simulator, logNormal, random)).isBetween(0L, 1000L);
+            assertThat(latencyMs(simulator, histogram, random)).isIn(120L, 900L, 3000L);
+        }
+        assertThat(latencyMs(simulator, new MethodProfile(), random)).isEqualTo(2000L);
+    }
+
+    // Profile of CREDIT_CARD without latency, so simulate() returns immediately
+    private static GatewaySimulatorProperties properties(long seed, double failureRate, double timeoutRate) {
+        MethodProfile profile = profile(Distribution.CONSTANT);
+        profile.setConstantMs(0);
+        profile.setFailureRate(failureRate);
+        profile.setTimeoutRate(timeoutRate);
+        profile.setTimeoutMs(0);
+
+        GatewaySimulatorProperties properties = new GatewaySimulatorProperties();
+        properties.setSeed(seed);
+        properties.getMethods().put("CREDIT_CARD", profile);
+        return properties;
+    }
+
+    private static MethodProfile profile(Distribution distribution) {
+        MethodProfile profile = new MethodProfile();
+        profile.setDistribution(distribution);
+        return profile;
+    }
+
+    private static List<Outcome> outcomes(GatewaySimulator simulator, int calls) throws InterruptedException {
+        List<Outcome> outcomes = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            outcomes.add(simulator.simulate("CREDIT_CARD"));
+        }
+        return outcomes;
+    }
+
+    private static long latencyMs(GatewaySimulator simulator, MethodProfile profile, Random random) {
+        return ReflectionTestUtils.<Long>invokeMethod(simulator, "latencyMs", profile, random);
+    }
+}
@@ -0,0 +1,141 @@
+package com.yoanesber.redis_stream_producer.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.config.ratelimit.CustomerRateLimitProperties;
+
+class CustomerRateLimiterTest {
+    private CustomerRateLimitProperties properties;
+    private RedisTemplate<String, Object> redisTemplate;
+    private RedisScript<Long> customerRateLimitScript;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        properties = new CustomerRateLimitProperties();
+        properties.setEnabled(true);
+        properties.getTiers().put("standard", new CustomerRateLimitProperties.TierLimit(1, 2));
+        properties.getTiers().put("premium", new CustomerRateLimitProperties.TierLimit(1, 5));
+        properties.getCustomers().put("CUST-PREMIUM", "premium");
+        redisTemplate = mock(RedisTemplate.class);
+        customerRateLimitScript = mock(RedisScript.class);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void disabledLimiterAcceptsEveryPayment() {
+        properties.setEnabled(false);
+        CustomerRateLimiter limiter = limiter();
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire("CUST1001");
+        }
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void localLimitRejectsAfterTheBurstOfTheTier() {
+        CustomerRateLimiter limiter = limiter();
+
+        assertThat(acceptedInARow(limiter, "CUST1001")).isEqualTo(2);
+        assertThat(acceptedInARow(limiter, "CUST-PREMIUM")).isEqualTo(5);
+
+        assertThatThrownBy(() -> limiter.acquire("CUST1001"))
+            .isInstanceOf(RateLimitExceededException.class)
+            .extracting(e -> ((RateLimitExceededException) e).getRetryAfterMs())
+            .satisfies(retryAfterMs -> assertThat(retryAfterMs).isBetween(1L, 1000L));
+        assertThat(meterRegistry.counter("order-payment.rate-limit.rejected", "tier", "standard").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("order-payment.rate-limit.rejected", "tier", "premium").count()).isEqualTo(1);
+    }
+
+    @Test
+    void customersHaveTheirOwnBuckets() {
+        CustomerRateLimiter limiter = limiter();
+
+        acceptedInARow(limiter, "CUST1001");
+
+        limiter.acquire("CUST1002");
+        assertThat(meterRegistry.get("order-payment.rate-limit.buckets").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void redisModeUsesTheWaitOfTheSharedBucket() {
+        properties.setMode(CustomerRateLimitProperties.Mode.REDIS);
+        when(redisTemplate.execute(eq(customerRateLimitScript), any(RedisSerializer.class), any(RedisSerializer.class),
+            anyList(), any(), any())).thenReturn(0L, 0L, 0L, 250_000L);
+        CustomerRateLimiter limiter = limiter();
+
+        // The shared bucket decides, not the local burst of 2
+        limiter.acquire("CUST1001");
+        limiter.acquire("CUST1001");
+        limiter.acquire("CUST1001");
+        assertThatThrownBy(() -> limiter.acquire("CUST1001"))
+            .isInstanceOf(RateLimitExceededException.class)
+            .extracting(e -> ((RateLimitExceededException) e).getRetryAfterMs())
+            .isEqualTo(250L);
+
+        verify(redisTemplate, times(4)).execute(eq(customerRateLimitScript), any(RedisSerializer.class),
+            any(RedisSerializer.class), eq(List.of("RATE_LIMIT:customer:CUST1001")), eq("1000000"), eq("2"));
+    }
+
+    @Test
+    void redisModeFallsBackToTheLocalBucketUntilRedisRecovers() {
+        properties.setMode(CustomerRateLimitProperties.Mode.REDIS);
+        when(redisTemplate.execute(eq(customerRateLimitScript), any(RedisSerializer.class), any(RedisSerializer.class),
+            anyList(), any(), any()))
+            .thenThrow(new RedisConnectionFailureException("down"))
+            .thenThrow(new RedisConnectionFailureException("down"))
+            .thenReturn(0L);
+        CustomerRateLimiter limiter = limiter();
+        AtomicBoolean failing = (AtomicBoolean) ReflectionTestUtils.getField(limiter, "sharedLimitFailing");
+
+        limiter.acquire("CUST1001");
+        limiter.acquire("CUST1001");
+        assertThat(meterRegistry.counter("order-payment.rate-limit.fallback").count()).isEqualTo(2);
+        assertThat(failing).isTrue();
+
+        // The local bucket is used up, but Redis answers again and its bucket decides
+        limiter.acquire("CUST1001");
+        assertThat(failing).isFalse();
+        assertThat(meterRegistry.counter("order-payment.rate-limit.fallback").count()).isEqualTo(2);
+    }
+
+    private CustomerRateLimiter limiter() {
+        return new CustomerRateLimiter(properties, redisTemplate, customerRateLimitScript, meterRegistry);
+    }
+
+    // Number of payments accepted before the first rejection
+    private static int acceptedInARow(CustomerRateLimiter limiter, String customerId) {
+        int accepted = 0;
+        while (true) {
+            try {
+                limiter.acquire(customerId);
+                accepted++;
+            } catch (RateLimitExceededException e) {
+                return accepted;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.yoanesber.redis_stream_producer.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstIsAllowedAtOnceThenTheWaitIsOneInterval() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire(0)).isZero();
+        }
+        assertThat(bucket.tryAcquire(0)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void tokensRefillAtTheRate() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+
+        // One token is back after one interval, the next one after another
+        assertThat(bucket.tryAcquire(SECOND / 20)).isEqualTo(SECOND / 20);
+        assertThat(bucket.tryAcquire(SECOND / 10)).isZero();
+        assertThat(bucket.tryAcquire(SECOND / 10)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void refillNeverExceedsTheBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+
+        long later = 60 * SECOND;
+        assertThat(bucket.tryAcquire(later)).isZero();
+        assertThat(bucket.tryAcquire(later)).isZero();
+        assertThat(bucket.tryAcquire(later)).isPositive();
+    }
+
+    @Test
+    void bucketIsIdleOnceFullForTheIdlePeriod() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        assertThat(bucket.isIdle(0, 0)).isTrue();
+
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+
+        // Full again after two intervals, then idle once the idle period has passed as well
+        assertThat(bucket.isIdle(SECOND / 10, 0)).isFalse();
+        assertThat(bucket.isIdle(SECOND / 5, 0)).isTrue();
+        assertThat(bucket.isIdle(SECOND / 5, SECOND)).isFalse();
+        assertThat(bucket.isIdle(SECOND / 5 + SECOND, SECOND)).isTrue();
+    }
+}
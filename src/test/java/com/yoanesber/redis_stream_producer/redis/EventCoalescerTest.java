@@ -0,0 +1,114 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class EventCoalescerTest {
+    private final MessageProducer messageProducer = mock(MessageProducer.class);
+    private final TraceContextHeaders traceContextHeaders = mock(TraceContextHeaders.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EventCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        when(traceContextHeaders.current()).thenReturn(Map.of());
+        coalescer = new EventCoalescer(messageProducer, traceContextHeaders, meterRegistry);
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        ReflectionTestUtils.setField(coalescer, "windowMs", 100L);
+        ReflectionTestUtils.setField(coalescer, "maxFlushAttempts", 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.destroy();
+    }
+
+    @Test
+    void duplicatesWithinTheWindowArePublishedOnceWithTheLatestPayload() {
+        coalescer.produce("PAYMENT_FAILED", "first", "ORD-1");
+        coalescer.produce("PAYMENT_FAILED", "second", "ORD-1");
+        coalescer.produce("PAYMENT_FAILED", "latest", "ORD-1");
+        coalescer.produce("PAYMENT_FAILED", "other", "ORD-2");
+
+        verify(messageProducer, timeout(2000)).produce(eq("PAYMENT_FAILED"), eq("latest"),
+            eq(Map.of(EventCoalescer.COALESCED_COUNT_FIELD, 3)), anyMap());
+        verify(messageProducer, timeout(2000)).produce(eq("PAYMENT_FAILED"), eq("other"),
+            eq(Map.of(EventCoalescer.COALESCED_COUNT_FIELD, 1)), anyMap());
+        assertThat(meterRegistry.get("redis.stream.coalesced").tag("stream", "PAYMENT_FAILED").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void sameKeyOnAnotherStreamIsNotMerged() {
+        coalescer.produce("PAYMENT_FAILED", "failed", "ORD-1");
+        coalescer.produce("PAYMENT_SUCCESS", "success", "ORD-1");
+
+        verify(messageProducer, timeout(2000)).produce(eq("PAYMENT_FAILED"), eq("failed"),
+            eq(Map.of(EventCoalescer.COALESCED_COUNT_FIELD, 1)), anyMap());
+        verify(messageProducer, timeout(2000)).produce(eq("PAYMENT_SUCCESS"), eq("success"),
+            eq(Map.of(EventCoalescer.COALESCED_COUNT_FIELD, 1)), anyMap());
+    }
+
+    @Test
+    void disabledCoalescerPublishesImmediately() {
+        ReflectionTestUtils.setField(coalescer, "enabled", false);
+
+        coalescer.produce("PAYMENT_FAILED", "first", "ORD-1");
+
+        verify(messageProducer).produce("PAYMENT_FAILED", "first", Map.of(EventCoalescer.COALESCED_COUNT_FIELD, 1));
+        verifyNoInteractions(traceContextHeaders);
+    }
+
+    @Test
+    void failedPublishIsRetriedInTheNextWindow() {
+        doThrow(new RedisConnectionFailureException("down")).doReturn(null)
+            .when(messageProducer).produce(any(), any(), anyMap(), anyMap());
+
+        coalescer.produce("PAYMENT_FAILED", "first", "ORD-1");
+
+        verify(messageProducer, timeout(2000).times(2)).produce(eq("PAYMENT_FAILED"), eq("first"),
+            eq(Map.of(EventCoalescer.COALESCED_COUNT_FIELD, 1)), anyMap());
+        assertThat(meterRegistry.find("redis.stream.coalesced.dropped").counter()).isNull();
+    }
+
+    @Test
+    void eventIsDroppedAndCountedAfterTheLastAttempt() {
+        doThrow(new RedisConnectionFailureException("down"))
+            .when(messageProducer).produce(any(), any(), anyMap(), anyMap());
+
+        coalescer.produce("PAYMENT_FAILED", "first", "ORD-1");
+
+        verify(messageProducer, timeout(2000).times(3)).produce(eq("PAYMENT_FAILED"), eq("first"), anyMap(), anyMap());
+        verify(messageProducer, after(300).times(3)).produce(any(), any(), anyMap(), anyMap());
+        assertThat(meterRegistry.get("redis.stream.coalesced.dropped").tag("stream", "PAYMENT_FAILED").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void pendingEventsAreFlushedOnShutdown() {
+        ReflectionTestUtils.setField(coalescer, "windowMs", 60_000L);
+        coalescer.produce("PAYMENT_FAILED", "first", "ORD-1");
+        verify(messageProducer, never()).produce(any(), any(), anyMap(), anyMap());
+
+        coalescer.destroy();
+
+        verify(messageProducer).produce(eq("PAYMENT_FAILED"), eq("first"), eq(Map.of(EventCoalescer.COALESCED_COUNT_FIELD, 1)), anyMap());
+    }
+}
@@ -0,0 +1,257 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+
+import com.yoanesber.redis_stream_producer.dto.StreamSettingsDTO;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+
+class MessageProducerTest {
+    private static final Comparator<RecordId> RECORD_ID_ORDER =
+        Comparator.comparing(RecordId::getTimestamp).thenComparing(RecordId::getSequence);
+
+    private RecordingRedisTemplate redisTemplate;
+    private MeterRegistry meterRegistry;
+    private EntrySizeStats entrySizeStats;
+    private StreamSettingsRegistry settingsRegistry;
+    private MessageProducer messageProducer;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new RecordingRedisTemplate();
+        meterRegistry = new SimpleMeterRegistry();
+        entrySizeStats = new EntrySizeStats(meterRegistry);
+        settingsRegistry = redisTemplate.settingsRegistry(1000);
+        messageProducer = redisTemplate.messageProducer(settingsRegistry, entrySizeStats, meterRegistry);
+    }
+
+    @Test
+    void produceWithIndexTrimsTheIndexWithTheStream() {
+        redisTemplate.scriptResult = call -> call.args().get(0);
+
+        RecordId recordId = messageProducer.produceWithIndex("PAYMENT_SUCCESS", orderPayment("ORD-1"), "orderId");
+
+        assertThat(redisTemplate.scriptCalls).hasSize(1);
+        RecordingRedisTemplate.ScriptCall call = redisTemplate.scriptCalls.get(0);
+        assertThat(call.keys()).containsExactly("PAYMENT_SUCCESS", "PAYMENT_SUCCESS:index:orderId",
+            "PAYMENT_SUCCESS:counters", "PAYMENT_SUCCESS:index:orderId:by-id");
+        assertThat(call.args().get(0)).isEqualTo(recordId.getValue());
+        assertThat(call.args().get(1)).isEqualTo("1000");
+        assertThat(call.args().get(3)).isEqualTo("ORD-1");
+        assertThat(call.args().get(4)).isEqualTo("86400");
+        assertThat(call.args().get(5)).isEqualTo("100");
+        assertThat(call.args().subList(6, call.args().size())).contains("orderId", "\"ORD-1\"", "id");
+    }
+
+    @Test
+    void findRecordIdReadsTheIndexHash() {
+        when(redisTemplate.hashCommands.hGet(any(), any())).thenAnswer(invocation ->
+            new String(invocation.getArgument(1, byte[].class), StandardCharsets.UTF_8).equals("ORD-1")
+                ? "1700000000000-0".getBytes(StandardCharsets.UTF_8)
+                : null);
+
+        assertThat(messageProducer.findRecordId("PAYMENT_SUCCESS", "orderId", "ORD-1")).isEqualTo(RecordId.of("1700000000000-0"));
+        assertThat(messageProducer.findRecordId("PAYMENT_SUCCESS", "orderId", "ORD-2")).isNull();
+    }
+
+    @Test
+    void produceBatchWritesASingleIdField() {
+        List<RecordId> recordIds = messageProducer.produceBatch("PAYMENT_IMPORT", List.of(orderPayment("ORD-1"), orderPayment("ORD-2")));
+
+        List<Map<String, Object>> entries = redisTemplate.entries("PAYMENT_IMPORT");
+        assertThat(entries).hasSize(2);
+        for (int i = 0; i < entries.size(); i++) {
+            // The payload's own id is replaced by the record ID, never written twice
+            assertThat(redisTemplate.xAdds.get(i).getValue().keySet())
+                .filteredOn(key -> new String(key, StandardCharsets.UTF_8).equals("id"))
+                .hasSize(1);
+            assertThat(entries.get(i)).containsEntry("id", recordIds.get(i).getValue());
+            assertThat(entries.get(i)).containsEntry(EventEnvelope.STREAM_NAME, "PAYMENT_IMPORT");
+        }
+    }
+
+    @Test
+    void produceAllWritesOneIdPerStreamInOneTransaction() {
+        List<String> streamNames = List.of("PAYMENT_SUCCESS", "PAYMENT_AUDIT");
+
+        List<RecordId> recordIds = messageProducer.produceAll(streamNames, orderPayment("ORD-1"));
+
+        // Each stream gets a single "id" field, equal to the ID of its own entry
+        assertThat(recordIds).hasSize(2).doesNotHaveDuplicates();
+        for (int i = 0; i < streamNames.size(); i++) {
+            assertThat(redisTemplate.xAdds.get(i).getValue().keySet())
+                .filteredOn(key -> new String(key, StandardCharsets.UTF_8).equals("id"))
+                .hasSize(1);
+            assertThat(redisTemplate.entries(streamNames.get(i))).extracting(entry -> entry.get("id"))
+                .containsExactly(recordIds.get(i).getValue());
+        }
+        verify(redisTemplate.connection).multi();
+        verify(redisTemplate.connection).exec();
+    }
+
+    @Test
+    void produceAllDiscardsTheTransactionWhenQueuingFails() {
+        doThrow(new RedisConnectionFailureException("Connection lost")).when(redisTemplate.streamCommands).xAdd(
+            argThat(record -> record != null && new String(record.getStream(), StandardCharsets.UTF_8).equals("PAYMENT_AUDIT")),
+            any(XAddOptions.class));
+
+        assertThatThrownBy(() -> messageProducer.produceAll(List.of("PAYMENT_SUCCESS", "PAYMENT_AUDIT"), orderPayment("ORD-1")))
+            .isInstanceOf(RuntimeException.class)
+            .hasRootCauseInstanceOf(RedisConnectionFailureException.class);
+
+        // The XADD already queued for PAYMENT_SUCCESS is discarded with the transaction
+        verify(redisTemplate.connection).discard();
+        verify(redisTemplate.connection, never()).exec();
+        assertThat(redisTemplate.xAdds).isEmpty();
+    }
+
+    @Test
+    void produceWritesTheEnvelopeHeadersFirst() {
+        messageProducer.produce("PAYMENT_SUCCESS", orderPayment("ORD-1"), Map.of("coalescedCount", 3));
+
+        Map<String, Object> entry = redisTemplate.entries("PAYMENT_SUCCESS").get(0);
+        assertThat(entry.keySet()).startsWith(EventEnvelope.EVENT_TYPE, EventEnvelope.SCHEMA_VERSION,
+            EventEnvelope.PRODUCER_INSTANCE, EventEnvelope.STREAM_NAME);
+        assertThat(entry).containsEntry(EventEnvelope.EVENT_TYPE, "OrderPayment")
+            .containsEntry(EventEnvelope.SCHEMA_VERSION, EventEnvelope.CURRENT_SCHEMA_VERSION)
+            .containsEntry(EventEnvelope.STREAM_NAME, "PAYMENT_SUCCESS")
+            .containsEntry("orderId", "ORD-1")
+            .containsEntry("coalescedCount", 3);
+        assertThat((String) entry.get(EventEnvelope.PRODUCER_INSTANCE)).startsWith("redis-stream-producer@");
+    }
+
+    @Test
+    void envelopeHeadersAreEncodedOncePerStreamAndEventType() {
+        messageProducer.produce("PAYMENT_SUCCESS", orderPayment("ORD-1"));
+        messageProducer.produce("PAYMENT_SUCCESS", orderPayment("ORD-2"));
+        messageProducer.produce("PAYMENT_FAILED", orderPayment("ORD-3"));
+
+        byte[] first = redisTemplate.xAdds.get(0).getValue().keySet().iterator().next();
+        byte[] second = redisTemplate.xAdds.get(1).getValue().keySet().iterator().next();
+        byte[] otherStream = redisTemplate.xAdds.get(2).getValue().keySet().iterator().next();
+
+        // The cached encoded header is reused as is for the same stream, and encoded again for another stream
+        assertThat(second).isSameAs(first);
+        assertThat(otherStream).isNotSameAs(first);
+        assertThat(redisTemplate.entries("PAYMENT_FAILED").get(0)).containsEntry(EventEnvelope.STREAM_NAME, "PAYMENT_FAILED");
+    }
+
+    @Test
+    void oversizedEntryIsChunkedBeforeItsPointer() {
+        enableChunking(settingsRegistry);
+
+        RecordId recordId = messageProducer.produce("PAYMENT_SUCCESS", largeOrderPayment("ORD-1"));
+
+        List<ByteRecord> chunks = chunkRecords(redisTemplate);
+        Map<String, Object> pointer = redisTemplate.entries("PAYMENT_SUCCESS").get(0);
+        int chunkCount = (Integer) pointer.get(EventEnvelope.CHUNK_COUNT);
+        assertThat(chunkCount).isGreaterThan(1);
+        assertThat(chunks).hasSize(chunkCount);
+        assertThat(pointer).containsEntry(EventEnvelope.CHUNKED, true)
+            .containsEntry(EventEnvelope.EVENT_TYPE, "OrderPayment")
+            .containsEntry(EventEnvelope.CHUNK_STREAM, "PAYMENT_SUCCESS:chunks")
+            .containsEntry(EventEnvelope.CHUNK_FIRST_ID, chunks.get(0).getId().getValue())
+            .containsEntry(EventEnvelope.CHUNK_LAST_ID, chunks.get(chunkCount - 1).getId().getValue())
+            .containsEntry("id", recordId.getValue())
+            .doesNotContainKey("transactionId");
+
+        // The pointer is published last, with an ID generated after those of its chunks
+        ByteRecord last = redisTemplate.xAdds.get(redisTemplate.xAdds.size() - 1);
+        assertThat(last.getId()).isEqualTo(recordId);
+        RecordId lastChunkId = chunks.get(chunkCount - 1).getId();
+        assertThat(RECORD_ID_ORDER.compare(recordId, lastChunkId)).isPositive();
+        // The data of a chunk is raw bytes, the other fields are encoded like any field
+        Map<byte[], byte[]> chunkFields = new LinkedHashMap<>(chunks.get(0).getValue());
+        chunkFields.keySet().removeIf(name -> new String(name, StandardCharsets.UTF_8).equals(EventEnvelope.CHUNK_DATA));
+        assertThat(redisTemplate.decode(chunkFields).get(EventEnvelope.CHUNK_GROUP_ID))
+            .isEqualTo(pointer.get(EventEnvelope.CHUNK_GROUP_ID))
+            .isNotEqualTo(recordId.getValue());
+
+        // By default the chunk stream keeps as many chunks as a full main stream of entries this size
+        ArgumentCaptor<XAddOptions> options = ArgumentCaptor.forClass(XAddOptions.class);
+        verify(redisTemplate.streamCommands, times(chunkCount + 1)).xAdd(any(ByteRecord.class), options.capture());
+        assertThat(options.getAllValues().get(0).getMaxlen()).isEqualTo(1000L * chunkCount);
+        assertThat(options.getValue().getMaxlen()).isEqualTo(1000L);
+    }
+
+    @Test
+    void chunkStreamMaxlenOverrideTakesPrecedence() {
+        enableChunking(settingsRegistry);
+        StreamSettingsDTO chunkRetention = new StreamSettingsDTO();
+        chunkRetention.setMaxlen(50_000L);
+        settingsRegistry.update("PAYMENT_SUCCESS:chunks", chunkRetention);
+
+        messageProducer.produce("PAYMENT_SUCCESS", largeOrderPayment("ORD-1"));
+
+        ArgumentCaptor<XAddOptions> options = ArgumentCaptor.forClass(XAddOptions.class);
+        verify(redisTemplate.streamCommands, times(redisTemplate.xAdds.size())).xAdd(any(ByteRecord.class), options.capture());
+        assertThat(options.getAllValues().get(0).getMaxlen()).isEqualTo(50_000L);
+    }
+
+    @Test
+    void entryUpToTheThresholdIsNotChunked() {
+        enableChunking(settingsRegistry);
+
+        RecordId recordId = messageProducer.produce("PAYMENT_SUCCESS", orderPayment("ORD-1"));
+
+        assertThat(chunkRecords(redisTemplate)).isEmpty();
+        assertThat(redisTemplate.entries("PAYMENT_SUCCESS").get(0))
+            .containsEntry("id", recordId.getValue())
+            .doesNotContainKey(EventEnvelope.CHUNKED);
+    }
+
+    // Chunks entries larger than 600 bytes into chunks of 64 bytes
+    static void enableChunking(StreamSettingsRegistry settingsRegistry) {
+        StreamSettingsDTO chunking = new StreamSettingsDTO();
+        chunking.setChunkThresholdBytes(600);
+        chunking.setChunkSizeBytes(64);
+        settingsRegistry.update("PAYMENT_SUCCESS", chunking);
+    }
+
+    static List<ByteRecord> chunkRecords(RecordingRedisTemplate redisTemplate) {
+        return redisTemplate.xAdds.stream()
+            .filter(record -> new String(record.getStream(), StandardCharsets.UTF_8).equals("PAYMENT_SUCCESS:chunks"))
+            .toList();
+    }
+
+    static OrderPayment largeOrderPayment(String orderId) {
+        OrderPayment orderPayment = orderPayment(orderId);
+        orderPayment.setTransactionId("T".repeat(1000));
+        return orderPayment;
+    }
+
+    static OrderPayment orderPayment(String orderId) {
+        OrderPayment orderPayment = new OrderPayment();
+        orderPayment.setId(42L);
+        orderPayment.setOrderId(orderId);
+        orderPayment.setAmount(new BigDecimal("199.99"));
+        orderPayment.setCurrency("IDR");
+        orderPayment.setPaymentMethod("CREDIT_CARD");
+        orderPayment.setPaymentStatus("SUCCESS");
+        orderPayment.setTransactionId("TXN1");
+        return orderPayment;
+    }
+}
@@ -0,0 +1,70 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class MessageProducerWarmupTest {
+    private RecordingRedisTemplate redisTemplate;
+    private MeterRegistry meterRegistry;
+    private EntrySizeStats entrySizeStats;
+    private MessageProducerWarmup warmup;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new RecordingRedisTemplate();
+        redisTemplate.scriptResult = call -> call.args().get(0);
+        meterRegistry = new SimpleMeterRegistry();
+        entrySizeStats = new EntrySizeStats(meterRegistry);
+
+        MessageProducer messageProducer = redisTemplate.messageProducer(redisTemplate.settingsRegistry(1000), entrySizeStats, meterRegistry);
+        warmup = new MessageProducerWarmup(messageProducer, entrySizeStats, redisTemplate);
+        ReflectionTestUtils.setField(warmup, "enabled", true);
+        ReflectionTestUtils.setField(warmup, "iterations", 10);
+        ReflectionTestUtils.setField(warmup, "dryRunPublishes", 2);
+        ReflectionTestUtils.setField(warmup, "scratchStream", "WARMUP_SCRATCH");
+    }
+
+    @Test
+    void dryRunLeavesNoScratchStreamStatistics() {
+        when(redisTemplate.connection.ping()).thenReturn("PONG");
+        entrySizeStats.record("PAYMENT_SUCCESS", Object.class, Map.of(new byte[1], new byte[1]));
+
+        warmup.run(null);
+
+        // Every payload type was published to the scratch stream, plus one indexed publish per dry run
+        assertThat(redisTemplate.entries("WARMUP_SCRATCH")).hasSize(10);
+        assertThat(redisTemplate.scriptCalls).hasSize(2);
+
+        assertThat(entrySizeStats.streams()).containsExactly("PAYMENT_SUCCESS");
+        assertThat(entrySizeStats.snapshot("WARMUP_SCRATCH")).isEmpty();
+        assertThat(meterRegistry.find("redis.stream.entry.size").tag("stream", "WARMUP_SCRATCH").meters()).isEmpty();
+        assertThat(meterRegistry.find("redis.stream.entry.size").tag("stream", "PAYMENT_SUCCESS").meters()).hasSize(1);
+
+        ArgumentCaptor<byte[][]> deleted = ArgumentCaptor.forClass(byte[][].class);
+        verify(redisTemplate.keyCommands).del(deleted.capture());
+        assertThat(Arrays.stream(deleted.getValue()).map(key -> new String(key, StandardCharsets.UTF_8)))
+            .contains("WARMUP_SCRATCH", "WARMUP_SCRATCH:index:orderId", "WARMUP_SCRATCH:index:orderId:by-id");
+    }
+
+    @Test
+    void failsWhenRedisDoesNotAnswer() {
+        when(redisTemplate.connection.ping()).thenReturn(null);
+
+        assertThatThrownBy(() -> warmup.run(null)).isInstanceOf(IllegalStateException.class);
+        verify(redisTemplate.keyCommands, never()).del(any(byte[][].class));
+    }
+}
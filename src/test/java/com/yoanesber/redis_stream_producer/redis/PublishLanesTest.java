@@ -0,0 +1,179 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.yoanesber.redis_stream_producer.config.redis.PublishLaneProperties;
+
+class PublishLanesTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PublishLanes lanes;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (lanes != null) {
+            lanes.stop();
+        }
+        callers.shutdownNow();
+    }
+
+    @Test
+    void publishRunsInlineWhenTheLanesAreNotStarted() {
+        lanes = new PublishLanes(new PublishLaneProperties(), meterRegistry);
+        Thread caller = Thread.currentThread();
+
+        assertThat(lanes.publish("PAYMENT_SUCCESS", () -> Thread.currentThread() == caller)).isTrue();
+    }
+
+    @Test
+    void publishRunsOnAWorkerAndPropagatesFailures() {
+        lanes = started(properties(1, 1000));
+
+        assertThat(lanes.publish("PAYMENT_SUCCESS", () -> Thread.currentThread().getName())).startsWith("publish-lane-worker-");
+        assertThatThrownBy(() -> lanes.publish("PAYMENT_SUCCESS", () -> {
+            throw new IllegalStateException("XADD failed");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("XADD failed");
+    }
+
+    @Test
+    void busyLanesAreDrainedInProportionToTheirWeight() throws Exception {
+        lanes = started(properties(1, 1000));
+        blockWorker();
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.submit(() -> lanes.publish("PAYMENT_IMPORT", () -> order.add("bulk")));
+            callers.submit(() -> lanes.publish("PAYMENT_SUCCESS", () -> order.add("high")));
+        }
+        awaitUntil(() -> depth("high") == 8 && depth("bulk") == 8);
+        release.countDown();
+        awaitUntil(() -> order.size() == 16);
+
+        // Weights 8 (high) and 1 (bulk): the first 9 slots go to 8 high publishes and a single bulk one
+        assertThat(order.subList(0, 9)).filteredOn("high"::equals).hasSize(8);
+        assertThat(meterRegistry.get("redis.stream.lane.wait").tag("lane", "high").timer().count()).isEqualTo(8);
+    }
+
+    @Test
+    void reservedWorkerServesItsLaneWhileBulkBatchesHoldTheSharedWorkers() throws Exception {
+        PublishLaneProperties properties = properties(1, 5_000);
+        properties.getLanes().get("high").setReservedWorkers(1);
+        lanes = started(properties);
+        blockWorker();
+
+        callers.submit(() -> lanes.publish("PAYMENT_IMPORT", () -> "bulk"));
+        awaitUntil(() -> depth("bulk") == 1);
+
+        assertThat(lanes.publish("PAYMENT_SUCCESS", () -> Thread.currentThread().getName())).isEqualTo("publish-lane-worker-high-0");
+        assertThat(depth("bulk")).isEqualTo(1);
+    }
+
+    @Test
+    void fullLaneRejectsThePublish() throws Exception {
+        PublishLaneProperties properties = properties(1, 1000);
+        properties.getLanes().get("bulk").setCapacity(1);
+        properties.setOfferTimeoutMs(50);
+        lanes = started(properties);
+        blockWorker();
+
+        callers.submit(() -> lanes.publish("PAYMENT_IMPORT", () -> "queued"));
+        awaitUntil(() -> depth("bulk") == 1);
+
+        assertThatThrownBy(() -> lanes.publish("PAYMENT_IMPORT", () -> "rejected"))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("Publish lane bulk is full");
+        assertThat(meterRegistry.get("redis.stream.lane.rejected").tag("lane", "bulk").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void callerGivesUpAfterThePublishTimeoutAndTheQueuedPublishIsDropped() throws Exception {
+        lanes = started(properties(1, 100));
+        blockWorker();
+
+        AtomicBoolean published = new AtomicBoolean();
+        assertThatThrownBy(() -> lanes.publish("PAYMENT_SUCCESS", () -> published.getAndSet(true)))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageStartingWith("Timed out waiting for publish to stream: PAYMENT_SUCCESS");
+
+        release.countDown();
+        assertThat(lanes.publish("PAYMENT_FAILED", () -> "next")).isEqualTo("next");
+        assertThat(published).isFalse();
+    }
+
+    @Test
+    void stopCompletesThePublishesStillWaiting() throws Exception {
+        lanes = started(properties(1, 10_000));
+        blockWorker();
+
+        Future<String> waiting = callers.submit(() -> lanes.publish("PAYMENT_SUCCESS", () -> "drained"));
+        awaitUntil(() -> depth("high") == 1);
+        Future<?> stopped = callers.submit(() -> lanes.stop());
+        awaitUntil(() -> !lanes.isRunning());
+        release.countDown();
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo("drained");
+        stopped.get(5, TimeUnit.SECONDS);
+
+        // Once stopped, publishes run on the calling thread
+        Thread caller = Thread.currentThread();
+        assertThat(lanes.publish("PAYMENT_SUCCESS", () -> Thread.currentThread() == caller)).isTrue();
+    }
+
+    private PublishLaneProperties properties(int workers, long publishTimeoutMs) {
+        PublishLaneProperties properties = new PublishLaneProperties();
+        properties.setWorkers(workers);
+        properties.setPublishTimeoutMs(publishTimeoutMs);
+        properties.getLanes().values().forEach(profile -> profile.setReservedWorkers(0));
+        return properties;
+    }
+
+    private PublishLanes started(PublishLaneProperties properties) {
+        PublishLanes started = new PublishLanes(properties, meterRegistry);
+        started.start();
+        return started;
+    }
+
+    // Occupies the only worker until release is counted down
+    private void blockWorker() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        callers.submit(() -> lanes.publish("PAYMENT_FAILED", () -> {
+            blocked.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }));
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private double depth(String lane) {
+        return meterRegistry.get("redis.stream.lane.depth").tag("lane", lane).gauge().value();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met within 5 s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
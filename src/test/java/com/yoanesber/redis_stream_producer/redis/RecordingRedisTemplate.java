@@ -0,0 +1,177 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.config.redis.PublishLaneProperties;
+
+/**
+ * RedisTemplate for unit tests, configured with the serializers of RedisConfig.
+ * Callbacks run against a mock connection whose command interfaces can be stubbed; XADDs are recorded
+ * (including pipelined and transactional ones; DISCARD drops those queued since MULTI) and answered with
+ * the ID of the record, and scripts are recorded
+ * (keys and arguments decoded as strings) and answered by scriptResult.
+ */
+
+class RecordingRedisTemplate extends RedisTemplate<String, Object> {
+    final RedisConnection connection = mock(RedisConnection.class);
+    final RedisStreamCommands streamCommands = mock(RedisStreamCommands.class);
+    final RedisHashCommands hashCommands = mock(RedisHashCommands.class);
+    final RedisKeyCommands keyCommands = mock(RedisKeyCommands.class);
+    final RedisStringCommands stringCommands = mock(RedisStringCommands.class);
+
+    final List<ByteRecord> xAdds = new ArrayList<>();
+    final List<ScriptCall> scriptCalls = new ArrayList<>();
+    Function<ScriptCall, Object> scriptResult = call -> null;
+
+    // Number of XADDs recorded when the open transaction was started
+    private int transactionStart;
+
+    record ScriptCall(RedisScript<?> script, List<String> keys, List<String> args) {
+    }
+
+    RecordingRedisTemplate() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+
+        setKeySerializer(new StringRedisSerializer());
+        setValueSerializer(serializer);
+        setHashKeySerializer(new StringRedisSerializer());
+        setHashValueSerializer(serializer);
+
+        when(connection.streamCommands()).thenReturn(streamCommands);
+        when(connection.hashCommands()).thenReturn(hashCommands);
+        when(connection.keyCommands()).thenReturn(keyCommands);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+
+        when(streamCommands.xAdd(any(ByteRecord.class), any(XAddOptions.class))).thenAnswer(invocation -> {
+            ByteRecord record = invocation.getArgument(0);
+            synchronized (xAdds) {
+                xAdds.add(record);
+                return record.getId().shouldBeAutoGenerated()
+                    ? RecordId.of(System.currentTimeMillis() + "-" + xAdds.size())
+                    : record.getId();
+            }
+        });
+
+        doAnswer(invocation -> {
+            synchronized (xAdds) {
+                transactionStart = xAdds.size();
+            }
+            return null;
+        }).when(connection).multi();
+        when(connection.exec()).thenAnswer(invocation -> {
+            synchronized (xAdds) {
+                return new ArrayList<Object>(xAdds.subList(transactionStart, xAdds.size()).stream().map(ByteRecord::getId).toList());
+            }
+        });
+        doAnswer(invocation -> {
+            synchronized (xAdds) {
+                xAdds.subList(transactionStart, xAdds.size()).clear();
+            }
+            return null;
+        }).when(connection).discard();
+    }
+
+    @Override
+    public <T> T execute(RedisCallback<T> action, boolean exposeConnection, boolean pipeline) {
+        return action.doInRedis(connection);
+    }
+
+    @Override
+    public List<Object> executePipelined(RedisCallback<?> action) {
+        synchronized (xAdds) {
+            int from = xAdds.size();
+            action.doInRedis(connection);
+            return new ArrayList<>(xAdds.subList(from, xAdds.size()).stream().map(ByteRecord::getId).toList());
+        }
+    }
+
+    // Entries added to the given stream, decoded
+    List<Map<String, Object>> entries(String streamName) {
+        synchronized (xAdds) {
+            return xAdds.stream()
+                .filter(record -> streamName.equals(getStringSerializer().deserialize(record.getStream())))
+                .map(record -> decode(record.getValue()))
+                .toList();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, RedisSerializer<?> argsSerializer, RedisSerializer<T> resultSerializer,
+            List<String> keys, Object... args) {
+        List<String> decoded = new ArrayList<>(args.length);
+        for (Object arg : args) {
+            decoded.add(arg instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(arg));
+        }
+
+        ScriptCall call = new ScriptCall(script, keys, decoded);
+        synchronized (scriptCalls) {
+            scriptCalls.add(call);
+        }
+        return (T) scriptResult.apply(call);
+    }
+
+    // Settings registry with the defaults of the application properties and the given maxlen, without overrides
+    StreamSettingsRegistry settingsRegistry(long maxlen) {
+        StreamSettingsRegistry registry = new StreamSettingsRegistry(this, new ObjectMapper());
+        ReflectionTestUtils.setField(registry, "defaultMaxlen", maxlen);
+        ReflectionTestUtils.setField(registry, "defaultApproximateTrimming", true);
+        ReflectionTestUtils.setField(registry, "defaultPipelineBatchSize", 1000);
+        ReflectionTestUtils.setField(registry, "defaultLogSampleRate", 1);
+        ReflectionTestUtils.setField(registry, "defaultChunkThresholdBytes", 65536);
+        ReflectionTestUtils.setField(registry, "defaultChunkSizeBytes", 16384);
+        ReflectionTestUtils.setField(registry, "acquireTimeoutMs", 1000L);
+        return registry;
+    }
+
+    // MessageProducer publishing through this template; the publish lanes are not started, so publishes run inline
+    MessageProducer messageProducer(StreamSettingsRegistry registry, EntrySizeStats entrySizeStats, MeterRegistry meterRegistry) {
+        MessageProducer messageProducer = new MessageProducer(this, mock(RedisScript.class),
+            new TraceContextHeaders(null, null, this), entrySizeStats, registry,
+            new PublishLanes(new PublishLaneProperties(), meterRegistry), meterRegistry);
+        ReflectionTestUtils.setField(messageProducer, "indexTtlSeconds", 86400L);
+        ReflectionTestUtils.setField(messageProducer, "indexTrimBatchSize", 100);
+        ReflectionTestUtils.setField(messageProducer, "schemaVersion", EventEnvelope.CURRENT_SCHEMA_VERSION);
+        ReflectionTestUtils.setField(messageProducer, "applicationName", "redis-stream-producer");
+        return messageProducer;
+    }
+
+    // Decodes an encoded entry the way a consumer would: field names as strings, values as JSON
+    Map<String, Object> decode(Map<byte[], byte[]> entry) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        entry.forEach((key, value) -> fields.put(getStringSerializer().deserialize(key), getHashValueSerializer().deserialize(value)));
+        return fields;
+    }
+}
@@ -0,0 +1,67 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.dto.StreamFootprintDTO;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+
+class StreamFootprintCollectorTest {
+    private final RecordingRedisTemplate redisTemplate = new RecordingRedisTemplate();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EntrySizeStats entrySizeStats = new EntrySizeStats(meterRegistry);
+    private StreamFootprintCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        // Every stream holds 10 entries using 2000 bytes
+        when(redisTemplate.streamCommands.xLen(any())).thenReturn(10L);
+        when(redisTemplate.connection.execute(eq("MEMORY"), any(byte[][].class))).thenReturn(2000L);
+
+        collector = new StreamFootprintCollector(redisTemplate.settingsRegistry(1000), entrySizeStats, redisTemplate, meterRegistry);
+        ReflectionTestUtils.setField(collector, "streams", List.of("PAYMENT_SUCCESS"));
+        ReflectionTestUtils.setField(collector, "memoryUsageSamples", 5);
+    }
+
+    @Test
+    void configuredStreamFootprintIsProjectedAndExported() {
+        StreamFootprintDTO footprint = collector.collect("PAYMENT_SUCCESS");
+
+        assertThat(footprint.getLength()).isEqualTo(10);
+        assertThat(footprint.getMemoryUsageBytes()).isEqualTo(2000);
+        assertThat(footprint.getBytesPerEntry()).isEqualTo(200.0);
+        assertThat(footprint.getProjectedRetentionBytes()).isEqualTo(200_000);
+        assertThat(meterRegistry.get("redis.stream.length").tag("stream", "PAYMENT_SUCCESS").gauge().value()).isEqualTo(10);
+        assertThat(meterRegistry.get("redis.stream.memory.projected").tag("stream", "PAYMENT_SUCCESS").gauge().value()).isEqualTo(200_000);
+    }
+
+    @Test
+    void unknownStreamIsQueriedWithoutRegisteringGauges() {
+        StreamFootprintDTO footprint = collector.collect("SOME_OTHER_STREAM");
+
+        assertThat(footprint.getLength()).isEqualTo(10);
+        assertThat(meterRegistry.find("redis.stream.length").tag("stream", "SOME_OTHER_STREAM").gauge()).isNull();
+        assertThat(meterRegistry.find("redis.stream.memory.usage").tag("stream", "SOME_OTHER_STREAM").gauge()).isNull();
+        assertThat(collector.collect()).extracting(StreamFootprintDTO::getStreamName).containsExactly("PAYMENT_SUCCESS");
+    }
+
+    @Test
+    void streamsPublishedToAreCollectedAndExported() {
+        entrySizeStats.record("PAYMENT_IMPORT", OrderPayment.class,
+            Map.of("orderId".getBytes(StandardCharsets.UTF_8), "\"ORD-1\"".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(collector.collect()).extracting(StreamFootprintDTO::getStreamName).containsExactly("PAYMENT_SUCCESS", "PAYMENT_IMPORT");
+        assertThat(meterRegistry.get("redis.stream.memory.usage").tag("stream", "PAYMENT_IMPORT").gauge().value()).isEqualTo(2000);
+    }
+}
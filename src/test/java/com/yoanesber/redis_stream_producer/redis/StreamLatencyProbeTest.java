@@ -0,0 +1,106 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.dto.StreamCanaryDTO;
+
+class StreamLatencyProbeTest {
+    private final MessageProducer messageProducer = mock(MessageProducer.class);
+    private final RedisStreamCommands streamCommands = mock(RedisStreamCommands.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StreamLatencyProbe probe;
+
+    @BeforeEach
+    void setUp() {
+        RedisConnection readConnection = mock(RedisConnection.class);
+        when(readConnection.streamCommands()).thenReturn(streamCommands);
+        RedisConnectionFactory redisConnectionFactory = mock(RedisConnectionFactory.class);
+        when(redisConnectionFactory.getConnection()).thenReturn(readConnection);
+
+        probe = new StreamLatencyProbe(messageProducer, redisConnectionFactory, meterRegistry);
+        ReflectionTestUtils.setField(probe, "enabled", true);
+        ReflectionTestUtils.setField(probe, "streams", List.of("PAYMENT_SUCCESS"));
+        // Rounds are run by the tests, the scheduled ones never come due
+        ReflectionTestUtils.setField(probe, "intervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(probe, "readTimeoutMs", 200L);
+        probe.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        probe.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void canaryReadBackRecordsTheVisibleLatency() {
+        RecordId canaryId = RecordId.of("1700000000000-3");
+        when(messageProducer.produce(eq("PAYMENT_SUCCESS"), any(StreamCanaryDTO.class))).thenReturn(canaryId);
+        // Another producer wrote just before the canary became readable
+        when(streamCommands.xRead(any(StreamReadOptions.class), any(StreamOffset[].class)))
+            .thenReturn(List.of(record("1700000000000-2")), List.of(record("1700000000000-3")));
+
+        ReflectionTestUtils.invokeMethod(probe, "probe", "PAYMENT_SUCCESS");
+
+        assertThat(meterRegistry.get("redis.stream.probe.publish").tag("stream", "PAYMENT_SUCCESS").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redis.stream.probe.visible").tag("stream", "PAYMENT_SUCCESS").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("redis.stream.probe.timeouts").counter()).isNull();
+
+        ArgumentCaptor<StreamOffset<byte[]>> offsets = ArgumentCaptor.forClass(StreamOffset.class);
+        verify(streamCommands, times(2)).xRead(any(StreamReadOptions.class), offsets.capture());
+        // The first read starts just below the canary, the next one after the entry already returned
+        assertThat(offsets.getAllValues()).extracting(offset -> offset.getOffset().getOffset())
+            .containsExactly("1700000000000-2", "1700000000000-2");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void canaryNotReadableInTimeCountsATimeout() {
+        RecordId canaryId = RecordId.of("1700000000000-0");
+        when(messageProducer.produce(eq("PAYMENT_SUCCESS"), any(StreamCanaryDTO.class))).thenReturn(canaryId);
+        when(streamCommands.xRead(any(StreamReadOptions.class), any(StreamOffset[].class))).thenReturn(List.of());
+
+        ReflectionTestUtils.invokeMethod(probe, "probe", "PAYMENT_SUCCESS");
+
+        assertThat(meterRegistry.get("redis.stream.probe.timeouts").tag("stream", "PAYMENT_SUCCESS").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("redis.stream.probe.visible").timer()).isNull();
+
+        // The canary has sequence 0, so the read starts at the last possible ID of the previous millisecond
+        ArgumentCaptor<StreamOffset<byte[]>> offsets = ArgumentCaptor.forClass(StreamOffset.class);
+        verify(streamCommands, atLeastOnce()).xRead(any(StreamReadOptions.class), offsets.capture());
+        assertThat(offsets.getValue().getOffset().getOffset()).isEqualTo("1699999999999-" + Long.MAX_VALUE);
+    }
+
+    private static ByteRecord record(String id) {
+        return StreamRecords.newRecord()
+            .in("PAYMENT_SUCCESS".getBytes(StandardCharsets.UTF_8))
+            .withId(RecordId.of(id))
+            .ofBytes(Map.of("canary".getBytes(StandardCharsets.UTF_8), "true".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,276 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.dto.ReplayJobDTO;
+
+class StreamReplayerTest {
+    private static final String LEASE_KEY = "PRODUCER_REPLAY:lease:job-1";
+
+    private final RecordingRedisTemplate redisTemplate = new RecordingRedisTemplate();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RedisScript<Long> renewScript = RedisScript.of(new ClassPathResource("scripts/replay_lease_renew.lua"), Long.class);
+    private final RedisScript<Long> releaseScript = RedisScript.of(new ClassPathResource("scripts/replay_lease_release.lua"), Long.class);
+    private MessageProducer messageProducer;
+    private StreamReplayer replayer;
+
+    // Leases and checkpoints, shared by every replayer of a test as if they were instances on the same Redis
+    private final Map<String, String> leases = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> checkpoints = new ConcurrentHashMap<>();
+    private final List<StreamReplayer> started = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        StreamSettingsRegistry settingsRegistry = redisTemplate.settingsRegistry(1000);
+        messageProducer = redisTemplate.messageProducer(settingsRegistry, new EntrySizeStats(meterRegistry), meterRegistry);
+        MessageProducerTest.enableChunking(settingsRegistry);
+        replayer = replayer();
+
+        when(redisTemplate.stringCommands.set(any(), any(), any(Expiration.class), any(SetOption.class))).thenAnswer(invocation ->
+            leases.putIfAbsent(string(invocation.getArgument(0)), string(invocation.getArgument(1))) == null);
+        redisTemplate.scriptResult = call -> {
+            String key = call.keys().get(0);
+            String owner = call.args().get(0);
+            if (call.script() == renewScript) {
+                return owner.equals(leases.get(key)) ? 1L : 0L;
+            }
+            return call.script() == releaseScript && leases.remove(key, owner) ? 1L : 0L;
+        };
+        when(redisTemplate.hashCommands.hGet(any(), any())).thenAnswer(invocation ->
+            checkpoints.get(string(invocation.getArgument(1))));
+        when(redisTemplate.hashCommands.hSet(any(), any(), any())).thenAnswer(invocation -> {
+            checkpoints.put(string(invocation.getArgument(1)), invocation.getArgument(2));
+            return true;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        started.forEach(StreamReplayer::stop);
+    }
+
+    @Test
+    void interruptedJobResumesAfterItsCheckpoint() throws Exception {
+        List<RecordId> sourceIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            sourceIds.add(messageProducer.produce("PAYMENT_SUCCESS", MessageProducerTest.orderPayment("ORD-" + i)));
+        }
+        List<ByteRecord> source = new ArrayList<>(redisTemplate.xAdds);
+
+        // The first run published ORD-1 and was cancelled
+        ReplayJobDTO interrupted = streamJob(sourceIds.get(2).getValue());
+        interrupted.setJobId("job-1");
+        interrupted.setStatus("CANCELLED");
+        interrupted.setPosition(sourceIds.get(0).getValue());
+        interrupted.setRead(1);
+        interrupted.setPublished(1);
+        checkpoints.put("job-1", objectMapper().writeValueAsBytes(interrupted));
+
+        List<Range<String>> ranges = new CopyOnWriteArrayList<>();
+        when(redisTemplate.streamCommands.xRange(any(), any(Range.class), any(Limit.class))).thenAnswer(invocation -> {
+            ranges.add(invocation.getArgument(1));
+            return source.subList(1, source.size());
+        });
+
+        StreamReplayer resumed = start(replayer());
+        resumed.startJob("job-1", new ReplayJobDTO());
+        awaitUntil(() -> "COMPLETED".equals(resumed.checkpoint("job-1").getStatus()));
+
+        assertThat(ranges).hasSize(1);
+        assertThat(ranges.get(0).getLowerBound().isInclusive()).isFalse();
+        assertThat(ranges.get(0).getLowerBound().getValue()).contains(sourceIds.get(0).getValue());
+        assertThat(redisTemplate.entries("PAYMENT_SUCCESS_REPLAY")).extracting(entry -> entry.get("orderId"))
+            .containsExactly("ORD-2", "ORD-3");
+
+        ReplayJobDTO job = resumed.checkpoint("job-1");
+        assertThat(job.getPosition()).isEqualTo(sourceIds.get(2).getValue());
+        assertThat(job.getRead()).isEqualTo(3);
+        assertThat(job.getPublished()).isEqualTo(3);
+        assertThat(leases).isEmpty();
+    }
+
+    @Test
+    void jobRunsOnOneInstanceOnlyAndALostLeaseIsLeftAlone() throws Exception {
+        RecordId sourceId = messageProducer.produce("PAYMENT_SUCCESS", MessageProducerTest.orderPayment("ORD-1"));
+        List<ByteRecord> source = new ArrayList<>(redisTemplate.xAdds);
+
+        // The job of the first instance is held in its first read
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        when(redisTemplate.streamCommands.xRange(any(), any(Range.class), any(Limit.class))).thenAnswer(invocation -> {
+            reading.countDown();
+            proceed.await(10, TimeUnit.SECONDS);
+            return source;
+        });
+
+        StreamReplayer first = start(replayer());
+        StreamReplayer second = start(replayer());
+        first.startJob("job-1", streamJob(sourceId.getValue()));
+        assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+        String firstOwner = leases.get(LEASE_KEY);
+
+        // The second instance is turned away before it reads the checkpoint
+        clearInvocations(redisTemplate.hashCommands);
+        assertThatThrownBy(() -> second.startJob("job-1", streamJob(sourceId.getValue())))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Replay job is already running: job-1");
+        verify(redisTemplate.hashCommands, never()).hGet(any(), any());
+        assertThat(leases).containsEntry(LEASE_KEY, firstOwner);
+
+        // The lease of the first run expires and another run takes it over while the first run is paused
+        leases.put(LEASE_KEY, "another-run");
+        proceed.countDown();
+        awaitUntil(() -> ((Map<?, ?>) ReflectionTestUtils.getField(first, "runningJobs")).isEmpty());
+
+        // The first run neither checkpoints over the new owner nor releases its lease
+        assertThat(first.checkpoint("job-1").getStatus()).isEqualTo("RUNNING");
+        assertThat(first.checkpoint("job-1").getPosition()).isNull();
+        assertThat(leases).containsEntry(LEASE_KEY, "another-run");
+    }
+
+    @Test
+    void chunksAreReassembledIntoThePayloadFields() {
+        messageProducer.produce("PAYMENT_SUCCESS", MessageProducerTest.largeOrderPayment("ORD-1"));
+        stubChunkStream(MessageProducerTest.chunkRecords(redisTemplate));
+
+        Map<String, Object> fields = redisTemplate.decode(reassemble(pointer()));
+
+        assertThat(fields).containsEntry("orderId", "ORD-1")
+            .containsEntry("transactionId", "T".repeat(1000))
+            .containsEntry("paymentStatus", "SUCCESS")
+            .doesNotContainKeys("id", EventEnvelope.EVENT_TYPE);
+    }
+
+    @Test
+    void corruptChunkFailsTheChecksum() {
+        messageProducer.produce("PAYMENT_SUCCESS", MessageProducerTest.largeOrderPayment("ORD-1"));
+        List<ByteRecord> chunks = new ArrayList<>(MessageProducerTest.chunkRecords(redisTemplate));
+
+        // Flip a byte in the data of the second chunk
+        ByteRecord chunk = chunks.get(1);
+        Map<byte[], byte[]> corrupt = new LinkedHashMap<>();
+        chunk.getValue().forEach((name, value) -> {
+            if (new String(name, StandardCharsets.UTF_8).equals(EventEnvelope.CHUNK_DATA)) {
+                value = value.clone();
+                value[0] ^= 1;
+            }
+            corrupt.put(name, value);
+        });
+        chunks.set(1, StreamRecords.rawBytes(corrupt).withStreamKey(chunk.getStream()).withId(chunk.getId()));
+        stubChunkStream(chunks);
+
+        Map<String, Object> pointer = pointer();
+        assertThatThrownBy(() -> reassemble(pointer))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Checksum mismatch");
+    }
+
+    @Test
+    void missingOrForeignChunkIsReported() {
+        messageProducer.produce("PAYMENT_SUCCESS", MessageProducerTest.largeOrderPayment("ORD-1"));
+        Map<String, Object> pointer = pointer();
+        List<ByteRecord> chunks = new ArrayList<>(MessageProducerTest.chunkRecords(redisTemplate));
+
+        // A chunk of another entry published at the same time takes the place of the last chunk
+        redisTemplate.xAdds.clear();
+        messageProducer.produce("PAYMENT_SUCCESS", MessageProducerTest.largeOrderPayment("ORD-2"));
+        chunks.set(chunks.size() - 1, MessageProducerTest.chunkRecords(redisTemplate).get(chunks.size() - 1));
+        stubChunkStream(chunks);
+
+        assertThatThrownBy(() -> reassemble(pointer))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Chunk " + (chunks.size() - 1) + " of")
+            .hasMessageContaining("is missing from PAYMENT_SUCCESS:chunks");
+    }
+
+    private Map<String, Object> pointer() {
+        return redisTemplate.entries("PAYMENT_SUCCESS").get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubChunkStream(List<ByteRecord> chunks) {
+        when(redisTemplate.streamCommands.xRange(any(), any(Range.class), any(Limit.class))).thenReturn(chunks);
+    }
+
+    private Map<byte[], byte[]> reassemble(Map<String, Object> pointer) {
+        return ReflectionTestUtils.invokeMethod(replayer, "reassemble", pointer);
+    }
+
+    private StreamReplayer replayer() {
+        StreamReplayer streamReplayer = new StreamReplayer(messageProducer, redisTemplate, renewScript, releaseScript,
+            objectMapper(), meterRegistry);
+        ReflectionTestUtils.setField(streamReplayer, "directory", "replay");
+        ReflectionTestUtils.setField(streamReplayer, "ratePerSecond", 1000d);
+        ReflectionTestUtils.setField(streamReplayer, "batchSize", 500);
+        ReflectionTestUtils.setField(streamReplayer, "maxJobs", 2);
+        ReflectionTestUtils.setField(streamReplayer, "leaseMs", 30000L);
+        return streamReplayer;
+    }
+
+    private StreamReplayer start(StreamReplayer streamReplayer) {
+        streamReplayer.start();
+        started.add(streamReplayer);
+        return streamReplayer;
+    }
+
+    // Replays PAYMENT_SUCCESS up to the given entry into PAYMENT_SUCCESS_REPLAY, without pacing
+    private static ReplayJobDTO streamJob(String toId) {
+        ReplayJobDTO job = new ReplayJobDTO();
+        job.setSource(StreamReplayer.SOURCE_STREAM);
+        job.setSourceStream("PAYMENT_SUCCESS");
+        job.setToId(toId);
+        job.setTargetStream("PAYMENT_SUCCESS_REPLAY");
+        job.setRatePerSecond(0d);
+        job.setBatchSize(500);
+        return job;
+    }
+
+    private static ObjectMapper objectMapper() {
+        return new ObjectMapper().findAndRegisterModules();
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met within 10 s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.dto.StreamSettingsDTO;
+
+class StreamSettingsRegistryTest {
+    private final RecordingRedisTemplate redisTemplate = new RecordingRedisTemplate();
+    private StreamSettingsRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = redisTemplate.settingsRegistry(1000);
+        ReflectionTestUtils.setField(registry, "acquireTimeoutMs", 50L);
+    }
+
+    @Test
+    void updateMergesOverridesOverTheDefaultsAndStoresThem() {
+        registry.update("PAYMENT_SUCCESS", overrides(5000L, null));
+        StreamSettingsDTO effective = registry.update("PAYMENT_SUCCESS", overrides(null, 10));
+
+        assertThat(effective.getMaxlen()).isEqualTo(5000L);
+        assertThat(effective.getLogSampleRate()).isEqualTo(10);
+        assertThat(effective.getPipelineBatchSize()).isEqualTo(1000);
+        assertThat(registry.overrides("PAYMENT_SUCCESS")).isEqualTo(overrides(5000L, 10));
+        assertThat(registry.settings("PAYMENT_FAILED").getMaxlen()).isEqualTo(1000L);
+        assertThat(registry.effectiveSettings()).containsOnlyKeys("PAYMENT_SUCCESS");
+
+        // Only the overridden fields are stored
+        ArgumentCaptor<byte[]> json = ArgumentCaptor.forClass(byte[].class);
+        verify(redisTemplate.hashCommands, times(2)).hSet(any(), any(), json.capture());
+        assertThat(new String(json.getValue(), StandardCharsets.UTF_8)).isEqualTo("{\"maxlen\":5000,\"logSampleRate\":10}");
+    }
+
+    @Test
+    void invalidUpdateIsRejectedAndNotStored() {
+        assertThatThrownBy(() -> registry.update("PAYMENT_SUCCESS", overrides(0L, null)))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        verify(redisTemplate.hashCommands, never()).hSet(any(), any(), any());
+        assertThat(registry.overrides("PAYMENT_SUCCESS")).isNull();
+    }
+
+    @Test
+    void returnedSettingsAreCopies() {
+        registry.update("PAYMENT_SUCCESS", overrides(5000L, null));
+
+        registry.settings("PAYMENT_SUCCESS").setMaxlen(1L);
+        registry.effectiveSettings().get("PAYMENT_SUCCESS").setMaxlen(1L);
+        registry.overrides("PAYMENT_SUCCESS").setMaxlen(1L);
+        registry.defaultSettings().setMaxlen(1L);
+
+        assertThat(registry.settings("PAYMENT_SUCCESS").getMaxlen()).isEqualTo(5000L);
+        assertThat(registry.snapshot("PAYMENT_SUCCESS").settings().getMaxlen()).isEqualTo(5000L);
+        assertThat(registry.overrides("PAYMENT_SUCCESS").getMaxlen()).isEqualTo(5000L);
+        assertThat(registry.defaultSettings().getMaxlen()).isEqualTo(1000L);
+    }
+
+    @Test
+    void reloadAppliesStoredOverridesAndKeepsTheLastValidOnes() {
+        Map<byte[], byte[]> stored = new LinkedHashMap<>();
+        stored.put(bytes("PAYMENT_SUCCESS"), bytes("{\"maxlen\":5000}"));
+        stored.put(bytes("PAYMENT_FAILED"), bytes("{\"maxlen\":200}"));
+        when(redisTemplate.hashCommands.hGetAll(any())).thenReturn(stored);
+
+        registry.reload();
+        assertThat(registry.settings("PAYMENT_SUCCESS").getMaxlen()).isEqualTo(5000L);
+        assertThat(registry.settings("PAYMENT_FAILED").getMaxlen()).isEqualTo(200L);
+
+        // An invalid value keeps the override in use, a removed field resets the stream to the defaults
+        stored.put(bytes("PAYMENT_SUCCESS"), bytes("{\"maxlen\":-1}"));
+        stored.remove(stored.keySet().stream().filter(key -> new String(key, StandardCharsets.UTF_8).equals("PAYMENT_FAILED")).findFirst().get());
+        registry.reload();
+
+        assertThat(registry.settings("PAYMENT_SUCCESS").getMaxlen()).isEqualTo(5000L);
+        assertThat(registry.settings("PAYMENT_FAILED").getMaxlen()).isEqualTo(1000L);
+        assertThat(registry.effectiveSettings()).containsOnlyKeys("PAYMENT_SUCCESS");
+    }
+
+    @Test
+    void snapshotLimitsConcurrentPublishesAndSamplesLogs() {
+        StreamSettingsDTO changes = new StreamSettingsDTO();
+        changes.setMaxInFlight(1);
+        changes.setLogSampleRate(3);
+        registry.update("PAYMENT_SUCCESS", changes);
+
+        StreamSettingsRegistry.Snapshot snapshot = registry.snapshot("PAYMENT_SUCCESS");
+        snapshot.acquire("PAYMENT_SUCCESS");
+        assertThatThrownBy(() -> snapshot.acquire("PAYMENT_SUCCESS"))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("Too many concurrent publishes");
+        snapshot.release();
+        snapshot.acquire("PAYMENT_SUCCESS");
+
+        assertThat(new boolean[] { snapshot.shouldLog(), snapshot.shouldLog(), snapshot.shouldLog(), snapshot.shouldLog() })
+            .containsExactly(true, false, false, true);
+
+        // Resetting replaces the snapshot; streams without overrides share the defaults
+        registry.reset("PAYMENT_SUCCESS");
+        assertThat(registry.snapshot("PAYMENT_SUCCESS")).isNotSameAs(snapshot).isSameAs(registry.snapshot("PAYMENT_FAILED"));
+    }
+
+    private static StreamSettingsDTO overrides(Long maxlen, Integer logSampleRate) {
+        StreamSettingsDTO settings = new StreamSettingsDTO();
+        settings.setMaxlen(maxlen);
+        settings.setLogSampleRate(logSampleRate);
+        return settings;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,126 @@
+package com.yoanesber.redis_stream_producer.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.tracing.CurrentTraceContext;
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class TraceContextHeadersTest {
+    private final RedisTemplate<String, Object> redisTemplate = redisTemplate();
+    private final CurrentTraceContext currentTraceContext = mock(CurrentTraceContext.class);
+    private final Propagator propagator = mock(Propagator.class);
+    private TraceContextHeaders traceContextHeaders;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        Tracer tracer = mock(Tracer.class);
+        when(tracer.currentTraceContext()).thenReturn(currentTraceContext);
+        ObjectProvider<Tracer> tracerProvider = mock(ObjectProvider.class);
+        when(tracerProvider.getIfAvailable()).thenReturn(tracer);
+        ObjectProvider<Propagator> propagatorProvider = mock(ObjectProvider.class);
+        when(propagatorProvider.getIfAvailable()).thenReturn(propagator);
+
+        // Injects the W3C fields of the context, followed by a baggage field
+        doAnswer(invocation -> {
+            TraceContext context = invocation.getArgument(0);
+            Propagator.Setter<Object> setter = invocation.getArgument(2);
+            setter.set(invocation.getArgument(1), EventEnvelope.TRACEPARENT, "00-" + context.traceId() + "-" + context.spanId() + "-01");
+            setter.set(invocation.getArgument(1), EventEnvelope.TRACESTATE, "vendor=1");
+            setter.set(invocation.getArgument(1), "baggage", "tenant=acme");
+            return null;
+        }).when(propagator).inject(any(), any(), any());
+
+        traceContextHeaders = new TraceContextHeaders(tracerProvider, propagatorProvider, redisTemplate);
+        ReflectionTestUtils.setField(traceContextHeaders, "enabled", true);
+    }
+
+    @Test
+    void currentSpanIsEncodedAsW3CFieldsOnly() {
+        TraceContext span = context("4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7");
+        when(currentTraceContext.context()).thenReturn(span);
+
+        Map<String, Object> fields = decode(traceContextHeaders.current());
+
+        assertThat(fields).containsExactly(
+            Map.entry(EventEnvelope.TRACEPARENT, "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"),
+            Map.entry(EventEnvelope.TRACESTATE, "vendor=1"));
+    }
+
+    @Test
+    void fieldsAreEncodedOncePerSpan() {
+        TraceContext span = context("4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7");
+        TraceContext nextSpan = context("4bf92f3577b34da6a3ce929d0e0e4736", "b7ad6b7169203331");
+        when(currentTraceContext.context()).thenReturn(span, span, nextSpan);
+
+        Map<byte[], byte[]> first = traceContextHeaders.current();
+        Map<byte[], byte[]> second = traceContextHeaders.current();
+        Map<byte[], byte[]> third = traceContextHeaders.current();
+
+        assertThat(second).isSameAs(first);
+        assertThat(third).isNotSameAs(first);
+        assertThat(decode(third).get(EventEnvelope.TRACEPARENT)).asString().contains("b7ad6b7169203331");
+        verify(propagator, times(2)).inject(any(), any(), any());
+    }
+
+    @Test
+    void noFieldsWithoutASpanOrWhenDisabled() {
+        when(currentTraceContext.context()).thenReturn(null);
+        assertThat(traceContextHeaders.current()).isEmpty();
+
+        TraceContext span = context("4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7");
+        when(currentTraceContext.context()).thenReturn(span);
+        ReflectionTestUtils.setField(traceContextHeaders, "enabled", false);
+        assertThat(traceContextHeaders.current()).isEmpty();
+    }
+
+    // Decodes encoded fields the way a consumer would: field names as strings, values as JSON
+    private Map<String, Object> decode(Map<byte[], byte[]> entry) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        entry.forEach((key, value) -> fields.put(redisTemplate.getStringSerializer().deserialize(key),
+            redisTemplate.getHashValueSerializer().deserialize(value)));
+        return fields;
+    }
+
+    // RedisTemplate with the serializers of RedisConfig
+    private static RedisTemplate<String, Object> redisTemplate() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(serializer);
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashValueSerializer(serializer);
+        return redisTemplate;
+    }
+
+    private static TraceContext context(String traceId, String spanId) {
+        TraceContext context = mock(TraceContext.class);
+        when(context.traceId()).thenReturn(traceId);
+        when(context.spanId()).thenReturn(spanId);
+        return context;
+    }
+}
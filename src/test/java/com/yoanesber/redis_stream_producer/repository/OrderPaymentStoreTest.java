@@ -0,0 +1,131 @@
+package com.yoanesber.redis_stream_producer.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+
+class OrderPaymentStoreTest {
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void paymentsAreFoundByEveryIndex() {
+        OrderPaymentStore store = new OrderPaymentStore(10);
+        OrderPayment first = store.save(orderPayment("ORD-1", "TXN-1", 0));
+        OrderPayment retry = store.save(orderPayment("ORD-1", "TXN-2", 1));
+
+        assertThat(first.getId()).isEqualTo(1L);
+        assertThat(retry.getId()).isEqualTo(2L);
+        assertThat(store.findById(1)).isEqualTo(first);
+        assertThat(store.findByOrderId("ORD-1")).isEqualTo(retry);
+        assertThat(store.findByTransactionId("TXN-1")).isEqualTo(first);
+        assertThat(store.findById(3)).isNull();
+        assertThat(store.findByOrderId("ORD-2")).isNull();
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    void createdAtRangeIsHalfOpenOrderedAndLimited() {
+        OrderPaymentStore store = new OrderPaymentStore(10);
+        for (int i = 0; i < 5; i++) {
+            store.save(orderPayment("ORD-" + i, "TXN-" + i, i));
+        }
+
+        assertThat(store.findByCreatedAtBetween(T0.plusSeconds(1), T0.plusSeconds(4), 10))
+            .extracting(OrderPayment::getOrderId).containsExactly("ORD-1", "ORD-2", "ORD-3");
+        assertThat(store.findByCreatedAtBetween(T0, T0.plusSeconds(5), 2))
+            .extracting(OrderPayment::getOrderId).containsExactly("ORD-0", "ORD-1");
+        assertThatThrownBy(() -> store.findByCreatedAtBetween(T0, T0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void fullRingEvictsTheOldestPaymentFromEveryIndex() {
+        OrderPaymentStore store = new OrderPaymentStore(3);
+        OrderPayment evicted = store.save(orderPayment("ORD-1", "TXN-1", 0));
+        store.save(orderPayment("ORD-2", "TXN-2", 1));
+        store.save(orderPayment("ORD-3", "TXN-3", 2));
+
+        // Modifying a saved payment does not leave it behind in the createdAt index when it is evicted
+        evicted.setCreatedAt(T0.plusSeconds(100));
+        store.save(orderPayment("ORD-4", "TXN-4", 3));
+
+        assertThat(store.size()).isEqualTo(3);
+        assertThat(store.findById(1)).isNull();
+        assertThat(store.findById(4).getOrderId()).isEqualTo("ORD-4");
+        assertThat(store.findByOrderId("ORD-1")).isNull();
+        assertThat(store.findByTransactionId("TXN-1")).isNull();
+        assertThat(store.findByCreatedAtBetween(T0, T0.plusSeconds(200), 10))
+            .extracting(OrderPayment::getOrderId).containsExactly("ORD-2", "ORD-3", "ORD-4");
+    }
+
+    @Test
+    void evictingAnOlderPaymentKeepsTheLatestOfTheOrderIndexed() {
+        OrderPaymentStore store = new OrderPaymentStore(2);
+        store.save(orderPayment("ORD-1", "TXN-1", 0));
+        OrderPayment retry = store.save(orderPayment("ORD-1", "TXN-2", 1));
+        store.save(orderPayment("ORD-2", "TXN-3", 2));
+
+        assertThat(store.findByOrderId("ORD-1")).isEqualTo(retry);
+    }
+
+    @Test
+    void cardCvvIsNotStoredAndTheCardNumberIsMasked() {
+        OrderPaymentStore store = new OrderPaymentStore(10);
+        OrderPayment orderPayment = orderPayment("ORD-1", "TXN-1", 0);
+        orderPayment.setCardNumber("4111 1111 1111 1234");
+        orderPayment.setCardExpiry("12/30");
+        orderPayment.setCardCvv("123");
+        store.save(orderPayment);
+
+        OrderPayment stored = store.findByOrderId("ORD-1");
+        assertThat(stored.getCardCvv()).isNull();
+        assertThat(stored.getCardNumber()).isEqualTo("************1234");
+        assertThat(stored.getCardExpiry()).isEqualTo("12/30");
+        assertThat(stored.getCreatedAt()).isEqualTo(orderPayment.getCreatedAt());
+    }
+
+    @Test
+    void ringGrowsPastItsInitialSlotsAndEvictsFromLargeIndexes() {
+        OrderPaymentStore store = new OrderPaymentStore(3000);
+        for (int i = 0; i < 10_000; i++) {
+            store.save(orderPayment("ORD-" + i, "TXN-" + i, i));
+        }
+
+        assertThat(store.size()).isEqualTo(3000);
+        for (int i = 0; i < 10_000; i++) {
+            OrderPayment byOrderId = store.findByOrderId("ORD-" + i);
+            if (i < 7000) {
+                assertThat(byOrderId).isNull();
+                assertThat(store.findByTransactionId("TXN-" + i)).isNull();
+            } else {
+                assertThat(byOrderId.getId()).isEqualTo(i + 1L);
+                assertThat(store.findByTransactionId("TXN-" + i).getOrderId()).isEqualTo("ORD-" + i);
+            }
+        }
+        assertThat(store.findByCreatedAtBetween(T0, T0.plusSeconds(10_000), 5000))
+            .hasSize(3000).first().extracting(OrderPayment::getOrderId).isEqualTo("ORD-7000");
+    }
+
+    @Test
+    void paymentsSavedOutOfCreationOrderAreReturnedInCreationOrder() {
+        OrderPaymentStore store = new OrderPaymentStore(3);
+        store.save(orderPayment("ORD-1", "TXN-1", 5));
+        store.save(orderPayment("ORD-2", "TXN-2", 1));
+        store.save(orderPayment("ORD-3", "TXN-3", 3));
+        store.save(orderPayment("ORD-4", "TXN-4", 2));
+
+        assertThat(store.findByCreatedAtBetween(T0, T0.plusSeconds(10), 10))
+            .extracting(OrderPayment::getOrderId).containsExactly("ORD-2", "ORD-4", "ORD-3");
+    }
+
+    private static OrderPayment orderPayment(String orderId, String transactionId, int createdAtSeconds) {
+        OrderPayment orderPayment = new OrderPayment();
+        orderPayment.setOrderId(orderId);
+        orderPayment.setTransactionId(transactionId);
+        orderPayment.setCreatedAt(T0.plusSeconds(createdAtSeconds));
+        return orderPayment;
+    }
+}
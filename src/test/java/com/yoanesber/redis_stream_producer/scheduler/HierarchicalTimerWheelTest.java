@@ -0,0 +1,73 @@
+package com.yoanesber.redis_stream_producer.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class HierarchicalTimerWheelTest {
+    // Expiry time of each task, in epoch milliseconds
+    private final Map<Long, Long> expiredAt = new ConcurrentHashMap<>();
+    private HierarchicalTimerWheel<Long> timerWheel;
+
+    @AfterEach
+    void tearDown() {
+        if (timerWheel != null) {
+            timerWheel.stop();
+        }
+    }
+
+    @Test
+    void tasksNeverExpireBeforeTheirDeadline() throws Exception {
+        // 4 slots per level and 3 levels: level 0 covers 20 ms, level 1 80 ms and level 2 320 ms,
+        // so the delays below go through every level, and the longest is parked beyond the top level
+        CountDownLatch done = new CountDownLatch(8);
+        timerWheel = new HierarchicalTimerWheel<>(5, 2, 3, deadline -> {
+            expiredAt.put(deadline, System.currentTimeMillis());
+            done.countDown();
+        });
+        timerWheel.start();
+
+        long now = System.currentTimeMillis();
+        for (long delay : new long[] { 0, 7, 19, 45, 90, 170, 330, 600 }) {
+            timerWheel.schedule(now + delay, delay);
+        }
+        assertThat(timerWheel.size()).isEqualTo(8);
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(timerWheel.size()).isZero();
+        expiredAt.forEach((deadline, expired) -> {
+            assertThat(expired).as("deadline %d", deadline).isGreaterThanOrEqualTo(deadline);
+            assertThat(expired - deadline).as("lateness of deadline %d", deadline).isLessThan(1000);
+        });
+    }
+
+    @Test
+    void failingHandlerDoesNotStopTheWheel() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        timerWheel = new HierarchicalTimerWheel<>(5, 4, 2, deadline -> {
+            done.countDown();
+            throw new IllegalStateException("handler failed");
+        });
+        timerWheel.start();
+
+        long now = System.currentTimeMillis();
+        timerWheel.schedule(now + 10, 10);
+        timerWheel.schedule(now + 50, 50);
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void rejectsTickCountersThatDoNotFit() {
+        assertThatThrownBy(() -> new HierarchicalTimerWheel<Long>(1, 16, 4, deadline -> { }))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HierarchicalTimerWheel<Long>(0, 8, 4, deadline -> { }))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
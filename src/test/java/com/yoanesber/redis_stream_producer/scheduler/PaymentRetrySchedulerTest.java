@@ -0,0 +1,197 @@
+package com.yoanesber.redis_stream_producer.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.dto.CreateOrderPaymentRequestDTO;
+import com.yoanesber.redis_stream_producer.entity.OrderPayment;
+import com.yoanesber.redis_stream_producer.entity.PaymentRetryTask;
+import com.yoanesber.redis_stream_producer.service.OrderPaymentService;
+
+class PaymentRetrySchedulerTest {
+    // Redis shared by the scheduler instances: the pending retries hash and the claim keys
+    private final Map<Object, Object> pendingRetries = new ConcurrentHashMap<>();
+    private final Map<String, String> claims = new ConcurrentHashMap<>();
+
+    // Retries run by any instance, as "orderId:retryCount"
+    private final List<String> attempts = new CopyOnWriteArrayList<>();
+    private final List<PaymentRetryScheduler> schedulers = new ArrayList<>();
+    private final List<RedisTemplate<String, Object>> redisTemplates = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        schedulers.forEach(PaymentRetryScheduler::stop);
+    }
+
+    @Test
+    void instancesRecoveringTheSameRetriesRunEachOnce() throws Exception {
+        long dueAt = System.currentTimeMillis() + 300;
+        for (int i = 0; i < 20; i++) {
+            pendingRetries.put("ORD-" + i, new PaymentRetryTask(orderPaymentDTO("ORD-" + i), 1, dueAt, dueAt + 60000));
+        }
+
+        PaymentRetryScheduler first = scheduler("SUCCESS", 5);
+        PaymentRetryScheduler second = scheduler("SUCCESS", 5);
+        first.start();
+        second.start();
+
+        awaitUntil(() -> pendingRetries.isEmpty());
+        Thread.sleep(300);
+
+        assertThat(attempts).hasSize(20).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void retryScheduledByOneInstanceIsNotRerunByAnotherStarting() throws Exception {
+        PaymentRetryScheduler first = scheduler("SUCCESS", 5);
+        first.start();
+        assertThat(first.schedule(orderPaymentDTO("ORD-1"), 1)).isTrue();
+
+        // Starting another instance loads the retry still pending on the first one
+        PaymentRetryScheduler second = scheduler("SUCCESS", 5);
+        second.start();
+        assertThat(second.pendingRetries()).isEqualTo(1);
+
+        awaitUntil(() -> pendingRetries.isEmpty());
+        Thread.sleep(300);
+
+        assertThat(attempts).containsExactly("ORD-1:1");
+    }
+
+    @Test
+    void failedRetriesAreRescheduledUntilTheLastAttempt() throws Exception {
+        PaymentRetryScheduler scheduler = scheduler("FAILED", 3);
+        scheduler.start();
+        assertThat(scheduler.schedule(orderPaymentDTO("ORD-1"), 1)).isTrue();
+
+        awaitUntil(() -> pendingRetries.isEmpty());
+
+        assertThat(attempts).containsExactly("ORD-1:1", "ORD-1:2", "ORD-1:3:last");
+        assertThat(scheduler.schedule(orderPaymentDTO("ORD-1"), 4)).isFalse();
+    }
+
+    @Test
+    void pendingRetriesAreStoredWithoutTheCardCvv() {
+        PaymentRetryScheduler scheduler = scheduler("SUCCESS", 5);
+        ReflectionTestUtils.setField(scheduler, "initialBackoffMs", 60000L);
+        ReflectionTestUtils.setField(scheduler, "maxBackoffMs", 60000L);
+        scheduler.start();
+        assertThat(scheduler.schedule(orderPaymentDTO("ORD-1"), 1)).isTrue();
+
+        PaymentRetryTask task = (PaymentRetryTask) pendingRetries.get("ORD-1");
+        assertThat(task.getOrderPayment().getCardCvv()).isNull();
+        assertThat(task.getOrderPayment().getCardNumber()).isEqualTo("4111111111111111");
+        assertThat(task.getExpiresAt()).isEqualTo(task.getDueAt() + 60000);
+        verify(redisTemplates.get(0)).expire("PAYMENT_RETRY:pending", Duration.ofMillis(120000));
+    }
+
+    @Test
+    void expiredRetriesAreDroppedInsteadOfRun() throws Exception {
+        long now = System.currentTimeMillis();
+        pendingRetries.put("ORD-1", new PaymentRetryTask(orderPaymentDTO("ORD-1"), 1, now - 120000, now - 60000));
+        pendingRetries.put("ORD-2", new PaymentRetryTask(orderPaymentDTO("ORD-2"), 1, now + 100, now + 60000));
+
+        PaymentRetryScheduler scheduler = scheduler("SUCCESS", 5);
+        scheduler.start();
+        assertThat(scheduler.pendingRetries()).isEqualTo(1);
+        assertThat(pendingRetries).doesNotContainKey("ORD-1");
+
+        awaitUntil(() -> pendingRetries.isEmpty());
+        assertThat(attempts).containsExactly("ORD-2:1");
+    }
+
+    // A scheduler instance on the shared Redis, whose retries end with the given payment status
+    private PaymentRetryScheduler scheduler(String paymentStatus, int maxRetries) {
+        OrderPaymentService orderPaymentService = mock(OrderPaymentService.class);
+        when(orderPaymentService.retryOrderPayment(any(), anyInt(), anyBoolean())).thenAnswer(invocation -> {
+            CreateOrderPaymentRequestDTO orderPaymentDTO = invocation.getArgument(0);
+            int retryCount = invocation.getArgument(1);
+            attempts.add(orderPaymentDTO.getOrderId() + ":" + retryCount + (invocation.getArgument(2, Boolean.class) ? ":last" : ""));
+
+            OrderPayment orderPayment = new OrderPayment();
+            orderPayment.setOrderId(orderPaymentDTO.getOrderId());
+            orderPayment.setPaymentStatus(paymentStatus);
+            return orderPayment;
+        });
+
+        RedisTemplate<String, Object> redisTemplate = sharedRedisTemplate();
+        PaymentRetryScheduler scheduler = new PaymentRetryScheduler(orderPaymentService, redisTemplate);
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "maxRetries", maxRetries);
+        ReflectionTestUtils.setField(scheduler, "initialBackoffMs", 100L);
+        ReflectionTestUtils.setField(scheduler, "multiplier", 1.0);
+        ReflectionTestUtils.setField(scheduler, "maxBackoffMs", 100L);
+        ReflectionTestUtils.setField(scheduler, "workers", 2);
+        ReflectionTestUtils.setField(scheduler, "claimTtlMs", 60000L);
+        ReflectionTestUtils.setField(scheduler, "pendingTtlMs", 60000L);
+        schedulers.add(scheduler);
+        redisTemplates.add(redisTemplate);
+        return scheduler;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> sharedRedisTemplate() {
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(hashOperations.entries("PAYMENT_RETRY:pending")).thenAnswer(invocation -> Map.copyOf(pendingRetries));
+        when(hashOperations.get(eq("PAYMENT_RETRY:pending"), any())).thenAnswer(invocation -> pendingRetries.get(invocation.getArgument(1)));
+        when(hashOperations.delete(eq("PAYMENT_RETRY:pending"), any())).thenAnswer(invocation -> {
+            pendingRetries.remove(invocation.getArgument(1));
+            return 1L;
+        });
+        doAnswer(invocation -> pendingRetries.put(invocation.getArgument(1), invocation.getArgument(2)))
+            .when(hashOperations).put(eq("PAYMENT_RETRY:pending"), any(), any());
+
+        RedisStringCommands stringCommands = mock(RedisStringCommands.class);
+        when(stringCommands.set(any(), any(), any(Expiration.class), eq(SetOption.SET_IF_ABSENT))).thenAnswer(invocation ->
+            claims.putIfAbsent(new String(invocation.getArgument(0, byte[].class), StandardCharsets.UTF_8),
+                new String(invocation.getArgument(1, byte[].class), StandardCharsets.UTF_8)) == null);
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenAnswer(invocation ->
+            invocation.getArgument(0, RedisCallback.class).doInRedis(connection));
+        return redisTemplate;
+    }
+
+    private static CreateOrderPaymentRequestDTO orderPaymentDTO(String orderId) {
+        return new CreateOrderPaymentRequestDTO(orderId, new BigDecimal("199.99"), "IDR", "CREDIT_CARD",
+            "4111111111111111", "12/30", "123", null, null, null);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met within 10 s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.yoanesber.redis_stream_producer.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.ObservationRegistry;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.yoanesber.redis_stream_producer.dto.OrderPaymentImportProgressDTO;
+import com.yoanesber.redis_stream_producer.gateway.GatewayHedger;
+import com.yoanesber.redis_stream_producer.ratelimit.CustomerRateLimiter;
+import com.yoanesber.redis_stream_producer.redis.EventCoalescer;
+import com.yoanesber.redis_stream_producer.redis.MessageProducer;
+import com.yoanesber.redis_stream_producer.repository.OrderPaymentStore;
+import com.yoanesber.redis_stream_producer.scheduler.PaymentRetryScheduler;
+
+class OrderPaymentServiceImplTest {
+    private MessageProducer messageProducer;
+    private OrderPaymentServiceImpl orderPaymentService;
+
+    // Sizes of the batches handed to produceBatch; the service reuses its batch list, so sizes are taken at call time
+    private final List<Integer> publishedBatches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        messageProducer = mock(MessageProducer.class);
+        orderPaymentService = new OrderPaymentServiceImpl(messageProducer, mock(EventCoalescer.class),
+            mock(PaymentRetryScheduler.class), mock(GatewayHedger.class), new OrderPaymentStore(100),
+            mock(CustomerRateLimiter.class), ObservationRegistry.NOOP, new ObjectMapper());
+        ReflectionTestUtils.setField(orderPaymentService, "importBatchSize", 2);
+
+        when(messageProducer.produceBatch(eq("PAYMENT_IMPORT"), anyList())).thenAnswer(invocation -> {
+            publishedBatches.add(invocation.getArgument(1, List.class).size());
+            return List.of();
+        });
+    }
+
+    @Test
+    void importPublishesInBatchesAndReportsProgressPerBatch() throws Exception {
+        List<OrderPaymentImportProgressDTO> reports = new ArrayList<>();
+
+        OrderPaymentImportProgressDTO progress = orderPaymentService.importOrderPayments(
+            ndjson(record("ORD-1", "199.99"), record("ORD-2", "199.99"), record("ORD-3", "199.99"),
+                record("ORD-4", "199.99"), record("ORD-5", "199.99")),
+            report -> reports.add(new OrderPaymentImportProgressDTO(report.getStatus(), report.getProcessed(),
+                report.getPublished(), report.getRejected(), report.getLastError())));
+
+        assertThat(publishedBatches).containsExactly(2, 2, 1);
+        assertThat(reports).extracting(OrderPaymentImportProgressDTO::getPublished).containsExactly(2L, 4L, 5L);
+        assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+        assertThat(progress.getProcessed()).isEqualTo(5);
+        assertThat(progress.getRejected()).isZero();
+    }
+
+    @Test
+    void importRejectsInvalidRecordsAndStopsAtMalformedInput() throws Exception {
+        OrderPaymentImportProgressDTO progress = orderPaymentService.importOrderPayments(
+            ndjson(record("ORD-1", "199.99"), record("ORD-2", "1.00"), record("ORD-3", "199.99"), "{\"orderId\":", record("ORD-4", "199.99")),
+            report -> { });
+
+        // The amount of ORD-2 does not match the order total; records after the malformed line are not read
+        assertThat(publishedBatches).containsExactly(2);
+        assertThat(progress.getStatus()).isEqualTo("FAILED");
+        assertThat(progress.getProcessed()).isEqualTo(3);
+        assertThat(progress.getPublished()).isEqualTo(2);
+        assertThat(progress.getRejected()).isEqualTo(1);
+        assertThat(progress.getLastError()).startsWith("Malformed record after 3 records");
+    }
+
+    static String record(String orderId, String amount) {
+        return "{\"orderId\":\"" + orderId + "\",\"amount\":" + amount + ",\"currency\":\"IDR\",\"paymentMethod\":\"CREDIT_CARD\","
+            + "\"cardNumber\":\"4111111111111111\",\"cardExpiry\":\"12/30\",\"cardCvv\":\"123\"}";
+    }
+
+    private static ByteArrayInputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}